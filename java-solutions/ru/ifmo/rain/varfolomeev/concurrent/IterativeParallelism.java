@@ -4,13 +4,17 @@ import info.kgeorgiy.java.advanced.concurrent.AdvancedIP;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
 import java.util.*;
-import java.util.function.Function;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.*;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 public class IterativeParallelism implements AdvancedIP {
     private final ParallelMapper parallelMapper;
+    private final int chunksPerThread;
+    private final IntConsumer affinityHook;
 
     /**
      * Creates instance with specified {@link ParallelMapper}
@@ -18,14 +22,32 @@ public class IterativeParallelism implements AdvancedIP {
      * @param mapper thread pool.
      */
     public IterativeParallelism(ParallelMapper mapper) {
-        this.parallelMapper = mapper;
+        this(mapper, 1, null);
     }
 
     /**
      * Create instance which creates work threads by itself.
      */
     public IterativeParallelism() {
-        this.parallelMapper = null;
+        this(null, 1, null);
+    }
+
+    /**
+     * Creates instance which splits values into {@code chunksPerThread} chunks per thread.
+     * Work threads claim chunks one by one, so threads with cheap chunks take more of them.
+     *
+     * @param mapper          thread pool or {@code null} to create work threads by itself
+     * @param chunksPerThread count of chunks per thread
+     * @param affinityHook    hook which is called in every work thread with its index
+     *                        before claiming chunks, e.g. to pin it to CPU set, or {@code null}
+     */
+    public IterativeParallelism(ParallelMapper mapper, int chunksPerThread, IntConsumer affinityHook) {
+        if (chunksPerThread < 1) {
+            throw new IllegalArgumentException("Chunks per thread count must be positive");
+        }
+        this.parallelMapper = mapper;
+        this.chunksPerThread = chunksPerThread;
+        this.affinityHook = affinityHook;
     }
 
     @Override
@@ -98,26 +120,451 @@ public class IterativeParallelism implements AdvancedIP {
     @Override
     public <T, R> R mapReduce(final int threadCount, final List<T> values,
                               final Function<T, R> lift, final Monoid<R> monoid) throws InterruptedException {
-        return reduce(threadCount, map(threadCount, values, lift), monoid);
+        return parallelMap(
+                threadCount, values,
+                stream -> stream.map(lift).reduce(monoid.getIdentity(), monoid.getOperator()),
+                stream -> stream.reduce(monoid.getIdentity(), monoid.getOperator())
+        );
+    }
+
+    /**
+     * Returns sum of {@code values} elements in range {@code [from, to)}.
+     */
+    public long sum(int threadCount, int[] values, int from, int to) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            long sum = 0;
+            for (int i = range.from; i < range.to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, stream -> stream.mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * Returns sum of {@code values} elements in range {@code [from, to)}.
+     */
+    public long sum(int threadCount, long[] values, int from, int to) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            long sum = 0;
+            for (int i = range.from; i < range.to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, stream -> stream.mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * Returns sum of {@code values} elements in range {@code [from, to)}.
+     */
+    public double sum(int threadCount, double[] values, int from, int to) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            double sum = 0;
+            for (int i = range.from; i < range.to; i++) {
+                sum += values[i];
+            }
+            return sum;
+        }, stream -> stream.mapToDouble(Double::doubleValue).sum());
+    }
+
+    /**
+     * Returns maximum of {@code values} elements in range {@code [from, to)}.
+     *
+     * @throws NoSuchElementException if range is empty
+     */
+    public int maximum(int threadCount, int[] values, int from, int to) throws InterruptedException {
+        checkNonEmpty(from, to);
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            int max = values[range.from];
+            for (int i = range.from + 1; i < range.to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, stream -> stream.mapToInt(Integer::intValue).max().orElseThrow());
+    }
+
+    /**
+     * Returns maximum of {@code values} elements in range {@code [from, to)}.
+     *
+     * @throws NoSuchElementException if range is empty
+     */
+    public long maximum(int threadCount, long[] values, int from, int to) throws InterruptedException {
+        checkNonEmpty(from, to);
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            long max = values[range.from];
+            for (int i = range.from + 1; i < range.to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, stream -> stream.mapToLong(Long::longValue).max().orElseThrow());
+    }
+
+    /**
+     * Returns maximum of {@code values} elements in range {@code [from, to)}.
+     *
+     * @throws NoSuchElementException if range is empty
+     */
+    public double maximum(int threadCount, double[] values, int from, int to) throws InterruptedException {
+        checkNonEmpty(from, to);
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            double max = values[range.from];
+            for (int i = range.from + 1; i < range.to; i++) {
+                max = Math.max(max, values[i]);
+            }
+            return max;
+        }, stream -> stream.mapToDouble(Double::doubleValue).max().orElseThrow());
+    }
+
+    /**
+     * Returns minimum of {@code values} elements in range {@code [from, to)}.
+     *
+     * @throws NoSuchElementException if range is empty
+     */
+    public int minimum(int threadCount, int[] values, int from, int to) throws InterruptedException {
+        checkNonEmpty(from, to);
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            int min = values[range.from];
+            for (int i = range.from + 1; i < range.to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, stream -> stream.mapToInt(Integer::intValue).min().orElseThrow());
+    }
+
+    /**
+     * Returns minimum of {@code values} elements in range {@code [from, to)}.
+     *
+     * @throws NoSuchElementException if range is empty
+     */
+    public long minimum(int threadCount, long[] values, int from, int to) throws InterruptedException {
+        checkNonEmpty(from, to);
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            long min = values[range.from];
+            for (int i = range.from + 1; i < range.to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, stream -> stream.mapToLong(Long::longValue).min().orElseThrow());
+    }
+
+    /**
+     * Returns minimum of {@code values} elements in range {@code [from, to)}.
+     *
+     * @throws NoSuchElementException if range is empty
+     */
+    public double minimum(int threadCount, double[] values, int from, int to) throws InterruptedException {
+        checkNonEmpty(from, to);
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            double min = values[range.from];
+            for (int i = range.from + 1; i < range.to; i++) {
+                min = Math.min(min, values[i]);
+            }
+            return min;
+        }, stream -> stream.mapToDouble(Double::doubleValue).min().orElseThrow());
+    }
+
+    /**
+     * Reduces {@code values} elements in range {@code [from, to)} with associative {@code operator}.
+     */
+    public int reduce(int threadCount, int[] values, int from, int to,
+                      int identity, IntBinaryOperator operator) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            int result = identity;
+            for (int i = range.from; i < range.to; i++) {
+                result = operator.applyAsInt(result, values[i]);
+            }
+            return result;
+        }, stream -> stream.mapToInt(Integer::intValue).reduce(identity, operator));
+    }
+
+    /**
+     * Reduces {@code values} elements in range {@code [from, to)} with associative {@code operator}.
+     */
+    public long reduce(int threadCount, long[] values, int from, int to,
+                       long identity, LongBinaryOperator operator) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            long result = identity;
+            for (int i = range.from; i < range.to; i++) {
+                result = operator.applyAsLong(result, values[i]);
+            }
+            return result;
+        }, stream -> stream.mapToLong(Long::longValue).reduce(identity, operator));
+    }
+
+    /**
+     * Reduces {@code values} elements in range {@code [from, to)} with associative {@code operator}.
+     */
+    public double reduce(int threadCount, double[] values, int from, int to,
+                         double identity, DoubleBinaryOperator operator) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            double result = identity;
+            for (int i = range.from; i < range.to; i++) {
+                result = operator.applyAsDouble(result, values[i]);
+            }
+            return result;
+        }, stream -> stream.mapToDouble(Double::doubleValue).reduce(identity, operator));
+    }
+
+    /**
+     * Returns count of {@code values} elements in range {@code [from, to)} matching {@code predicate}.
+     */
+    public int count(int threadCount, int[] values, int from, int to,
+                     IntPredicate predicate) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            int count = 0;
+            for (int i = range.from; i < range.to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, stream -> stream.mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Returns count of {@code values} elements in range {@code [from, to)} matching {@code predicate}.
+     */
+    public int count(int threadCount, long[] values, int from, int to,
+                     LongPredicate predicate) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            int count = 0;
+            for (int i = range.from; i < range.to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, stream -> stream.mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Returns count of {@code values} elements in range {@code [from, to)} matching {@code predicate}.
+     */
+    public int count(int threadCount, double[] values, int from, int to,
+                     DoublePredicate predicate) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            int count = 0;
+            for (int i = range.from; i < range.to; i++) {
+                if (predicate.test(values[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }, stream -> stream.mapToInt(Integer::intValue).sum());
+    }
+
+    /**
+     * Returns {@code values} elements in range {@code [from, to)} matching {@code predicate} keeping their order.
+     */
+    public int[] filter(int threadCount, int[] values, int from, int to,
+                        IntPredicate predicate) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            int[] result = new int[range.to - range.from];
+            int size = 0;
+            for (int i = range.from; i < range.to; i++) {
+                if (predicate.test(values[i])) {
+                    result[size++] = values[i];
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }, stream -> stream.flatMapToInt(Arrays::stream).toArray());
+    }
+
+    /**
+     * Returns {@code values} elements in range {@code [from, to)} matching {@code predicate} keeping their order.
+     */
+    public long[] filter(int threadCount, long[] values, int from, int to,
+                         LongPredicate predicate) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            long[] result = new long[range.to - range.from];
+            int size = 0;
+            for (int i = range.from; i < range.to; i++) {
+                if (predicate.test(values[i])) {
+                    result[size++] = values[i];
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }, stream -> stream.flatMapToLong(Arrays::stream).toArray());
+    }
+
+    /**
+     * Returns {@code values} elements in range {@code [from, to)} matching {@code predicate} keeping their order.
+     */
+    public double[] filter(int threadCount, double[] values, int from, int to,
+                           DoublePredicate predicate) throws InterruptedException {
+        return parallelRange(threadCount, values.length, from, to, range -> {
+            double[] result = new double[range.to - range.from];
+            int size = 0;
+            for (int i = range.from; i < range.to; i++) {
+                if (predicate.test(values[i])) {
+                    result[size++] = values[i];
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }, stream -> stream.flatMapToDouble(Arrays::stream).toArray());
+    }
+
+    /**
+     * Returns inclusive prefix scan of {@code values}: i-th element is fold of elements {@code [0, i]}.
+     */
+    public <T> List<T> inclusiveScan(int threadCount, List<T> values, Monoid<T> monoid) throws InterruptedException {
+        return scan(threadCount, values, monoid, true);
+    }
+
+    /**
+     * Returns exclusive prefix scan of {@code values}: i-th element is fold of elements {@code [0, i)}.
+     */
+    public <T> List<T> exclusiveScan(int threadCount, List<T> values, Monoid<T> monoid) throws InterruptedException {
+        return scan(threadCount, values, monoid, false);
+    }
+
+    /**
+     * Returns stable sorted copy of {@code values}.
+     */
+    public <T> List<T> sort(int threadCount, List<? extends T> values,
+                            Comparator<? super T> comparator) throws InterruptedException {
+        checkThreadCount(threadCount);
+        threadCount = Math.min(threadCount, values.size());
+        List<List<T>> sorted = evaluate(
+                threadCount, getSubStreams(threadCount, values),
+                stream -> stream.sorted(comparator).collect(Collectors.<T>toList())
+        );
+        while (sorted.size() > 1) {
+            final List<List<T>> parts = sorted;
+            List<Integer> indices = getIndices((parts.size() + 1) / 2);
+            sorted = evaluate(indices.size(), indices, index -> 2 * index + 1 < parts.size() ?
+                    merge(parts.get(2 * index), parts.get(2 * index + 1), comparator) : parts.get(2 * index));
+        }
+        return sorted.isEmpty() ? new ArrayList<>() : sorted.get(0);
+    }
+
+    private <T> List<T> scan(int threadCount, List<T> values,
+                             Monoid<T> monoid, boolean inclusive) throws InterruptedException {
+        checkThreadCount(threadCount);
+        threadCount = Math.min(threadCount, values.size());
+        BinaryOperator<T> operator = monoid.getOperator();
+        List<Range> ranges = getRanges(getChunkCount(threadCount, values.size()), 0, values.size());
+        List<T> totals = evaluate(threadCount, ranges, range -> values.subList(range.from, range.to).stream()
+                .reduce(monoid.getIdentity(), operator));
+
+        List<T> offsets = new ArrayList<>();
+        T offset = monoid.getIdentity();
+        for (T total : totals) {
+            offsets.add(offset);
+            offset = operator.apply(offset, total);
+        }
+
+        List<List<T>> parts = evaluate(threadCount, getIndices(ranges.size()), index -> {
+            Range range = ranges.get(index);
+            List<T> part = new ArrayList<>(range.to - range.from);
+            T accumulator = offsets.get(index);
+            for (T value : values.subList(range.from, range.to)) {
+                if (!inclusive) {
+                    part.add(accumulator);
+                }
+                accumulator = operator.apply(accumulator, value);
+                if (inclusive) {
+                    part.add(accumulator);
+                }
+            }
+            return part;
+        });
+        return parts.stream().flatMap(Collection::stream).collect(Collectors.toList());
+    }
+
+    private static <T> List<T> merge(List<T> left, List<T> right, Comparator<? super T> comparator) {
+        List<T> result = new ArrayList<>(left.size() + right.size());
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            if (comparator.compare(right.get(j), left.get(i)) < 0) {
+                result.add(right.get(j++));
+            } else {
+                result.add(left.get(i++));
+            }
+        }
+        result.addAll(left.subList(i, left.size()));
+        result.addAll(right.subList(j, right.size()));
+        return result;
+    }
+
+    private static List<Integer> getIndices(int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    private static class Range {
+        private final int from;
+        private final int to;
+
+        private Range(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    private void checkNonEmpty(int from, int to) {
+        if (from >= to) {
+            throw new NoSuchElementException("Range is empty");
+        }
+    }
+
+    private <R, S> S parallelRange(int threadCount, int length, int from, int to,
+                                   Function<? super Range, R> mapper,
+                                   Function<? super Stream<R>, S> reducer) throws InterruptedException {
+        Objects.checkFromToIndex(from, to, length);
+        checkThreadCount(threadCount);
+        threadCount = Math.min(threadCount, to - from);
+        List<Range> ranges = getRanges(getChunkCount(threadCount, to - from), from, to);
+        return reducer.apply(evaluate(threadCount, ranges, mapper).stream());
     }
 
     private <R, S, T> S parallelMap(int threadCount,
                                     final List<T> values, Function<? super Stream<T>, R> mapper,
                                     Function<? super Stream<R>, S> reducer) throws InterruptedException {
+        checkThreadCount(threadCount);
+        threadCount = Math.min(threadCount, values.size());
+        List<Stream<T>> streams = getSubStreams(getChunkCount(threadCount, values.size()), values);
+        return reducer.apply(evaluate(threadCount, streams, mapper).stream());
+    }
+
+    private void checkThreadCount(int threadCount) throws InterruptedException {
         if (threadCount < 1) {
             throw new InterruptedException("Should be at least 1 thread");
         }
-        threadCount = Math.min(threadCount, values.size());
-        List<Stream<T>> streams = getSubStreams(threadCount, values);
-        List<R> results = parallelMapper == null ?
-                evaluateResults(threadCount, streams, mapper) : parallelMapper.map(mapper, streams);
-        return reducer.apply(results.stream());
     }
 
-    private <T, R> List<R> evaluateResults(final int threadCount, List<Stream<T>> streams,
-                                           Function<? super Stream<T>, R> mapper) throws InterruptedException {
-        List<R> results = new ArrayList<>(Collections.nCopies(threadCount, null));
-        List<Thread> threads = getThreads(threadCount, streams, results, mapper);
+    private int getChunkCount(int threadCount, int size) {
+        return (int) Math.min((long) threadCount * chunksPerThread, size);
+    }
+
+    private <C, R> List<R> evaluate(int threadCount, List<C> chunks,
+                                    Function<? super C, R> mapper) throws InterruptedException {
+        if (chunks.size() == threadCount && affinityHook == null) {
+            return parallelMapper == null ? evaluateResults(chunks, mapper) : parallelMapper.map(mapper, chunks);
+        }
+        AtomicInteger cursor = new AtomicInteger();
+        AtomicReferenceArray<R> results = new AtomicReferenceArray<>(chunks.size());
+        Function<Integer, Void> claimer = worker -> {
+            if (affinityHook != null) {
+                affinityHook.accept(worker);
+            }
+            for (int index = cursor.getAndIncrement(); index < chunks.size(); index = cursor.getAndIncrement()) {
+                results.set(index, mapper.apply(chunks.get(index)));
+            }
+            return null;
+        };
+        List<Integer> workers = getIndices(threadCount);
+        if (parallelMapper == null) {
+            evaluateResults(workers, claimer);
+        } else {
+            parallelMapper.map(claimer, workers);
+        }
+        return IntStream.range(0, chunks.size()).mapToObj(results::get).collect(Collectors.toList());
+    }
+
+    private <C, R> List<R> evaluateResults(List<C> chunks,
+                                           Function<? super C, R> mapper) throws InterruptedException {
+        List<R> results = new ArrayList<>(Collections.nCopies(chunks.size(), null));
+        List<Thread> threads = getThreads(chunks, results, mapper);
         for (Thread thread : threads) {
             thread.start();
         }
@@ -137,27 +584,38 @@ public class IterativeParallelism implements AdvancedIP {
         return results;
     }
 
-    private <T> List<Stream<T>> getSubStreams(int threadCount, List<T> values) {
+    private <T> List<Stream<T>> getSubStreams(int chunkCount, List<T> values) {
         List<Stream<T>> streams = new ArrayList<>();
-        for (int i = 0; i < threadCount; i++) {
+        for (int i = 0; i < chunkCount; i++) {
             streams.add(values.subList(
-                    getBound(i, threadCount, values.size()),
-                    getBound(i + 1, threadCount, values.size())
+                    getBound(i, chunkCount, values.size()),
+                    getBound(i + 1, chunkCount, values.size())
             ).stream());
         }
         return streams;
     }
 
-    private int getBound(long index, int threadCount, int size) {
-        return (int) ((index * size) / threadCount);
+    private List<Range> getRanges(int chunkCount, int from, int to) {
+        List<Range> ranges = new ArrayList<>();
+        for (int i = 0; i < chunkCount; i++) {
+            ranges.add(new Range(
+                    from + getBound(i, chunkCount, to - from),
+                    from + getBound(i + 1, chunkCount, to - from)
+            ));
+        }
+        return ranges;
+    }
+
+    private int getBound(long index, int chunkCount, int size) {
+        return (int) ((index * size) / chunkCount);
     }
 
-    private <T, R> List<Thread> getThreads(int threadCount, final List<Stream<T>> streams,
-                                           List<R> result, Function<? super Stream<T>, R> mapper) {
+    private <C, R> List<Thread> getThreads(final List<C> chunks,
+                                           List<R> result, Function<? super C, R> mapper) {
         List<Thread> threads = new ArrayList<>();
-        for (int i = 0; i < threadCount; i++) {
+        for (int i = 0; i < chunks.size(); i++) {
             final int index = i;
-            threads.add(new Thread(() -> result.set(index, mapper.apply(streams.get(index)))));
+            threads.add(new Thread(() -> result.set(index, mapper.apply(chunks.get(index)))));
         }
         return threads;
     }
@@ -0,0 +1,122 @@
+package ru.ifmo.rain.varfolomeev.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Benchmark of {@link IterativeParallelism} chunk claiming on values with skewed processing cost.
+ * Values of the first thread's static chunk are {@code skew} times more expensive than the rest,
+ * so with one chunk per thread that thread finishes last, while with more chunks per thread
+ * the other threads claim part of its work. Cost is simulated by spinning, which needs a core per thread
+ * to show the difference, or by parking, which shows it on any machine.
+ */
+public class IterativeParallelismBenchmark {
+    private static final String CSV_HEADER = "chunksPerThread,threads,size,cost_us,skew,mode,ideal_ms,min_ms,median_ms";
+
+    private final int threads;
+    private final int cost;
+    private final int skew;
+    private final boolean spin;
+    private final int repeats;
+    private final List<Integer> costs;
+
+    private IterativeParallelismBenchmark(int threads, int size, int cost, int skew, boolean spin, int repeats) {
+        this.threads = threads;
+        this.cost = cost;
+        this.skew = skew;
+        this.spin = spin;
+        this.repeats = repeats;
+        costs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            costs.add(i < size / threads ? cost * skew : cost);
+        }
+    }
+
+    private Integer process(Integer micros) {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        for (long left = deadline - System.nanoTime(); left > 0; left = deadline - System.nanoTime()) {
+            if (spin) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(left);
+            }
+        }
+        return micros;
+    }
+
+    private String run(ParallelMapperImpl mapper, int chunksPerThread) throws InterruptedException {
+        IterativeParallelism parallelism = new IterativeParallelism(mapper, chunksPerThread, null);
+        // Warm up
+        parallelism.map(threads, costs, this::process);
+        long[] times = new long[repeats];
+        for (int i = 0; i < repeats; i++) {
+            long start = System.nanoTime();
+            parallelism.map(threads, costs, this::process);
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        long total = costs.stream().mapToLong(Integer::longValue).sum();
+        return String.join(",",
+                Integer.toString(chunksPerThread),
+                Integer.toString(threads),
+                Integer.toString(costs.size()),
+                Integer.toString(cost),
+                Integer.toString(skew),
+                spin ? "spin" : "sleep",
+                Long.toString(TimeUnit.MICROSECONDS.toMillis(total / threads)),
+                Long.toString(TimeUnit.NANOSECONDS.toMillis(times[0])),
+                Long.toString(TimeUnit.NANOSECONDS.toMillis(times[repeats / 2])));
+    }
+
+    /**
+     * Runs {@link IterativeParallelism#map} with every given count of chunks per thread and prints times.
+     * Usage: IterativeParallelismBenchmark threads size costMicros skew spin|sleep repeats chunksPerThread...
+     *
+     * @param args threads count, count of values, cost of cheap value in microseconds,
+     *             cost ratio of expensive and cheap values, cost simulation mode, count of measured runs
+     *             and counts of chunks per thread to compare
+     */
+    public static void main(String[] args) {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Arguments can't be null");
+            return;
+        }
+        if (args.length < 7 || !args[4].equals("spin") && !args[4].equals("sleep")) {
+            System.err.println("Usage: IterativeParallelismBenchmark threads size costMicros skew spin|sleep repeats "
+                    + "chunksPerThread...");
+            return;
+        }
+        int[] values = new int[args.length - 1];
+        for (int i = 0; i < args.length; i++) {
+            if (i == 4) {
+                continue;
+            }
+            try {
+                values[i < 4 ? i : i - 1] = Integer.parseInt(args[i]);
+            } catch (NumberFormatException e) {
+                System.err.println("Can't parse argument '" + args[i] + "': " + e.getMessage());
+                return;
+            }
+        }
+        if (Arrays.stream(values).anyMatch(value -> value < 1)) {
+            System.err.println("All numbers must be positive");
+            return;
+        }
+
+        int threads = values[0];
+        IterativeParallelismBenchmark benchmark = new IterativeParallelismBenchmark(
+                threads, values[1], values[2], values[3], args[4].equals("spin"), values[4]);
+        System.out.println(CSV_HEADER);
+        try (ParallelMapperImpl mapper = new ParallelMapperImpl(threads)) {
+            for (int i = 5; i < values.length; i++) {
+                System.out.println(benchmark.run(mapper, values[i]));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
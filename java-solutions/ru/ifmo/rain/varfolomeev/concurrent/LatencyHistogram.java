@@ -0,0 +1,127 @@
+package ru.ifmo.rain.varfolomeev.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative values with logarithmic buckets.
+ * Every power of two range is split into {@value #SUB_BUCKETS} linear sub-buckets,
+ * so recorded values are kept with relative error below 12.5%.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * Creates empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    private static int getIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(value, 0);
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long getLowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (1L << exponent) | ((long) (index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS));
+    }
+
+    private static long getUpperBound(int index) {
+        return index + 1 == BUCKET_COUNT ? Long.MAX_VALUE : getLowerBound(index + 1) - 1;
+    }
+
+    /**
+     * Records {@code value}. Negative values are recorded as zero.
+     *
+     * @param value value to record
+     */
+    public void record(long value) {
+        counts.getAndIncrement(getIndex(value));
+    }
+
+    /**
+     * Adds all values recorded in {@code other} to this histogram.
+     *
+     * @param other histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.getAndAdd(i, count);
+            }
+        }
+    }
+
+    /**
+     * Returns copy of this histogram.
+     *
+     * @return new histogram with same values
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.add(this);
+        return histogram;
+    }
+
+    /**
+     * Returns count of recorded values.
+     *
+     * @return values count
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns upper bound of the bucket containing value at given percentile.
+     *
+     * @param percentile percentile in range {@code [0, 100]}
+     * @return percentile value or 0 if histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in range [0, 100]");
+        }
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return getUpperBound(i);
+            }
+        }
+        return getUpperBound(BUCKET_COUNT - 1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, p50=%d, p99=%d, p99.9=%d, max=%d", getCount(),
+                getValueAtPercentile(50), getValueAtPercentile(99), getValueAtPercentile(99.9), getValueAtPercentile(100));
+    }
+}
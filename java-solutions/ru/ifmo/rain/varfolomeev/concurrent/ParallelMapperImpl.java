@@ -2,108 +2,856 @@ package ru.ifmo.rain.varfolomeev.concurrent;
 
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-public class ParallelMapperImpl implements ParallelMapper {
-    private final Queue<Runnable> tasks;
-    private final List<Thread> threads;
+public class ParallelMapperImpl implements ParallelMapper, ParallelMapperImplMBean {
+    private static final AtomicInteger INSTANCE_COUNTER = new AtomicInteger();
 
-    private static class ListWrapper<R> {
-        private final List<R> result;
+    private final String name;
+    private final Deque<Tenant> ready;
+    private final Map<String, Tenant> tenants;
+    private final List<Worker> workers;
+    private final Worker retired;
+    private final int coreCount;
+    private final int maxCount;
+    private final long keepAliveTime;
+    private final LatencyHistogram callLatency;
+    private int idleCount;
+    private int spawnedCount;
+    private int retiredCount;
+    private boolean closed;
+    private volatile boolean failFast;
+    private long queueDepth;
+    private long queueHighWaterMark;
+    private ObjectName objectName;
+
+    private static class Job<T, R> {
+        private final Tenant tenant;
+        private final Function<? super T, ? extends R> mapper;
+        private final List<? extends T> args;
+        private final BiConsumer<Integer, ? super R> consumer;
+        private final CompletableFuture<Void> future;
+        private final long submitTime;
+        private final boolean failFast;
+        private volatile boolean aborted;
+        private int nextIndex;
         private int counter;
+        private RuntimeException exception;
 
-        private ListWrapper(int size) {
-            result = new ArrayList<>(Collections.nCopies(size, null));
+        private Job(Tenant tenant, Function<? super T, ? extends R> mapper, List<? extends T> args,
+                    BiConsumer<Integer, ? super R> consumer, boolean failFast) {
+            this.tenant = tenant;
+            this.mapper = mapper;
+            this.args = args;
+            this.consumer = consumer;
+            this.failFast = failFast;
+            future = new CompletableFuture<>();
+            submitTime = System.nanoTime();
+            aborted = false;
+            nextIndex = 0;
             counter = 0;
+            exception = null;
+        }
+
+        private boolean run(int index) {
+            if (future.isDone()) {
+                return true;
+            }
+            if (aborted) {
+                skip(1);
+                return true;
+            }
+            RuntimeException failure = null;
+            try {
+                consumer.accept(index, mapper.apply(args.get(index)));
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            finish(failure);
+            return failure == null;
         }
 
-        private synchronized void setElement(int index, R element) {
-            result.set(index, element);
-            counter++;
-            if (counter == result.size()) {
-                notify();
+        private void finish(RuntimeException failure) {
+            if (failure != null) {
+                synchronized (this) {
+                    if (exception == null) {
+                        exception = failure;
+                        aborted = failFast;
+                    } else {
+                        exception.addSuppressed(failure);
+                    }
+                }
             }
+            skip(1);
         }
 
-        private synchronized List<R> getResult() throws InterruptedException {
-            while (counter < result.size()) {
-                wait();
+        /**
+         * Counts elements as finished. Future is completed outside of the monitor,
+         * since dependent stages are run by the completing thread.
+         */
+        private void skip(int count) {
+            RuntimeException failure;
+            synchronized (this) {
+                counter += count;
+                if (counter != args.size()) {
+                    return;
+                }
+                failure = exception;
             }
-            return result;
+            if (failure == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private static class Tenant {
+        private final String name;
+        private final Queue<Job<?, ?>> jobs;
+        private int weight;
+        private int credit;
+        private long queueDepth;
+        private long submitted;
+        private long started;
+        private long totalWaitTime;
+        private long maxWaitTime;
+
+        private Tenant(String name) {
+            this.name = name;
+            jobs = new ArrayDeque<>();
+            weight = 1;
+            credit = weight;
+        }
+
+        private TenantStatistics getStatistics() {
+            return new TenantStatistics(name, weight, queueDepth, submitted, started,
+                    started == 0 ? 0 : totalWaitTime / started, maxWaitTime);
+        }
+    }
+
+    /**
+     * Snapshot of tenant queue statistics. Wait time is measured in nanoseconds from
+     * {@code map} call to start of the element processing.
+     */
+    public static class TenantStatistics {
+        private final String tenant;
+        private final int weight;
+        private final long queueDepth;
+        private final long submittedTasks;
+        private final long startedTasks;
+        private final long averageWaitTime;
+        private final long maxWaitTime;
+
+        private TenantStatistics(String tenant, int weight, long queueDepth, long submittedTasks,
+                                 long startedTasks, long averageWaitTime, long maxWaitTime) {
+            this.tenant = tenant;
+            this.weight = weight;
+            this.queueDepth = queueDepth;
+            this.submittedTasks = submittedTasks;
+            this.startedTasks = startedTasks;
+            this.averageWaitTime = averageWaitTime;
+            this.maxWaitTime = maxWaitTime;
+        }
+
+        public String getTenant() {
+            return tenant;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getSubmittedTasks() {
+            return submittedTasks;
+        }
+
+        public long getStartedTasks() {
+            return startedTasks;
+        }
+
+        public long getAverageWaitTime() {
+            return averageWaitTime;
+        }
+
+        public long getMaxWaitTime() {
+            return maxWaitTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: weight=%d, queueDepth=%d, submitted=%d, started=%d, avgWait=%dns, maxWait=%dns",
+                    tenant, weight, queueDepth, submittedTasks, startedTasks, averageWaitTime, maxWaitTime);
+        }
+    }
+
+    private static class Worker {
+        private final String name;
+        private final LatencyHistogram taskLatency;
+        private Thread thread;
+        private boolean retired;
+        private volatile long completed;
+        private volatile long failed;
+        private volatile long busyTime;
+        private volatile long idleTime;
+
+        private Worker(String name) {
+            this.name = name;
+            taskLatency = new LatencyHistogram();
+        }
+
+        private WorkerStatistics getStatistics() {
+            return new WorkerStatistics(name, completed, failed, busyTime, idleTime);
+        }
+
+        private void add(Worker worker) {
+            taskLatency.add(worker.taskLatency);
+            completed += worker.completed;
+            failed += worker.failed;
+            busyTime += worker.busyTime;
+            idleTime += worker.idleTime;
+        }
+    }
+
+    /**
+     * Snapshot of work thread statistics. Times are measured in nanoseconds.
+     */
+    public static class WorkerStatistics {
+        private final String name;
+        private final long completedTasks;
+        private final long failedTasks;
+        private final long busyTime;
+        private final long idleTime;
+
+        private WorkerStatistics(String name, long completedTasks, long failedTasks, long busyTime, long idleTime) {
+            this.name = name;
+            this.completedTasks = completedTasks;
+            this.failedTasks = failedTasks;
+            this.busyTime = busyTime;
+            this.idleTime = idleTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCompletedTasks() {
+            return completedTasks;
+        }
+
+        public long getFailedTasks() {
+            return failedTasks;
+        }
+
+        public long getBusyTime() {
+            return busyTime;
+        }
+
+        public long getIdleTime() {
+            return idleTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: completed=%d, failed=%d, busy=%dns, idle=%dns",
+                    name, completedTasks, failedTasks, busyTime, idleTime);
+        }
+    }
+
+    /**
+     * Snapshot of mapper statistics. Task latency is time of one element processing,
+     * call latency is time from {@code map} call to its completion, both in nanoseconds.
+     * Totals of retired work threads are summed up in {@link #getRetiredWorkers()}.
+     */
+    public static class MapperStatistics {
+        private final long queueDepth;
+        private final long queueHighWaterMark;
+        private final int spawnedWorkerCount;
+        private final int retiredWorkerCount;
+        private final List<WorkerStatistics> workers;
+        private final WorkerStatistics retiredWorkers;
+        private final LatencyHistogram taskLatency;
+        private final LatencyHistogram callLatency;
+
+        private MapperStatistics(long queueDepth, long queueHighWaterMark,
+                                 int spawnedWorkerCount, int retiredWorkerCount,
+                                 List<WorkerStatistics> workers, WorkerStatistics retiredWorkers,
+                                 LatencyHistogram taskLatency, LatencyHistogram callLatency) {
+            this.queueDepth = queueDepth;
+            this.queueHighWaterMark = queueHighWaterMark;
+            this.spawnedWorkerCount = spawnedWorkerCount;
+            this.retiredWorkerCount = retiredWorkerCount;
+            this.workers = workers;
+            this.retiredWorkers = retiredWorkers;
+            this.taskLatency = taskLatency;
+            this.callLatency = callLatency;
+        }
+
+        public int getSpawnedWorkerCount() {
+            return spawnedWorkerCount;
+        }
+
+        public int getRetiredWorkerCount() {
+            return retiredWorkerCount;
+        }
+
+        public WorkerStatistics getRetiredWorkers() {
+            return retiredWorkers;
+        }
+
+        public long getQueueDepth() {
+            return queueDepth;
+        }
+
+        public long getQueueHighWaterMark() {
+            return queueHighWaterMark;
+        }
+
+        public List<WorkerStatistics> getWorkers() {
+            return workers;
+        }
+
+        public LatencyHistogram getTaskLatency() {
+            return taskLatency;
+        }
+
+        public LatencyHistogram getCallLatency() {
+            return callLatency;
+        }
+
+        public long getCompletedTasks() {
+            return retiredWorkers.getCompletedTasks()
+                    + workers.stream().mapToLong(WorkerStatistics::getCompletedTasks).sum();
+        }
+
+        public long getFailedTasks() {
+            return retiredWorkers.getFailedTasks()
+                    + workers.stream().mapToLong(WorkerStatistics::getFailedTasks).sum();
+        }
+
+        /**
+         * Returns part of work threads time spent on tasks.
+         *
+         * @return busy time to total time ratio
+         */
+        public double getUtilization() {
+            long busy = retiredWorkers.getBusyTime()
+                    + workers.stream().mapToLong(WorkerStatistics::getBusyTime).sum();
+            long idle = retiredWorkers.getIdleTime()
+                    + workers.stream().mapToLong(WorkerStatistics::getIdleTime).sum();
+            return busy + idle == 0 ? 0 : (double) busy / (busy + idle);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("queueDepth=%d, queueHighWaterMark=%d, spawned=%d, retired=%d, utilization=%.3f%n" +
+                            "task latency: %s%ncall latency: %s%n%s%n%s",
+                    queueDepth, queueHighWaterMark, spawnedWorkerCount, retiredWorkerCount, getUtilization(),
+                    taskLatency, callLatency, retiredWorkers,
+                    workers.stream().map(WorkerStatistics::toString).collect(Collectors.joining(System.lineSeparator())));
         }
     }
 
     /**
      * Creates work threads, which can be used for parallelism in {@link #map(Function, List)}.
+     * Elements of concurrent {@code map} calls are dispatched in round-robin order between tenants,
+     * so small calls are not delayed by large ones. Every call without tenant is a tenant by itself.
      *
      * @param threadCount threads count to create.
      */
     public ParallelMapperImpl(int threadCount) {
-        if (threadCount < 1) {
+        this(threadCount, threadCount, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates elastic pool of work threads. Pool starts with {@code coreCount} threads
+     * and grows up to {@code maxCount} threads when queued elements outnumber idle threads.
+     * Threads above {@code coreCount} are stopped after being idle for {@code keepAliveTime}.
+     *
+     * @param coreCount     count of threads which are never stopped
+     * @param maxCount      maximal count of threads
+     * @param keepAliveTime idle time after which extra thread is stopped
+     * @param unit          unit of {@code keepAliveTime}
+     */
+    public ParallelMapperImpl(int coreCount, int maxCount, long keepAliveTime, TimeUnit unit) {
+        if (coreCount < 1) {
             throw new IllegalArgumentException("Thread count must be positive");
         }
-        this.tasks = new LinkedList<>();
-        this.threads = Stream.generate(() -> new Thread(() -> {
+        if (maxCount < coreCount) {
+            throw new IllegalArgumentException("Maximal thread count can't be less than core thread count");
+        }
+        if (keepAliveTime < 0) {
+            throw new IllegalArgumentException("Keep alive time can't be negative");
+        }
+        this.name = "ParallelMapper-" + INSTANCE_COUNTER.incrementAndGet();
+        this.ready = new ArrayDeque<>();
+        this.tenants = new HashMap<>();
+        this.callLatency = new LatencyHistogram();
+        this.workers = new ArrayList<>();
+        this.retired = new Worker(name + "-retired");
+        this.coreCount = coreCount;
+        this.maxCount = maxCount;
+        this.keepAliveTime = unit.toNanos(keepAliveTime);
+        synchronized (ready) {
+            for (int i = 0; i < coreCount; i++) {
+                spawn();
+            }
+        }
+    }
+
+    private void spawn() {
+        Worker worker = new Worker(name + "-worker-" + spawnedCount++);
+        worker.thread = new Thread(() -> work(worker), worker.name);
+        workers.add(worker);
+        worker.thread.start();
+    }
+
+    private void retire(Worker worker) {
+        worker.retired = true;
+        workers.remove(worker);
+        retired.add(worker);
+        retiredCount++;
+    }
+
+    private void work(Worker worker) {
+        long time = System.nanoTime();
+        try {
+            while (!Thread.interrupted() && !worker.retired) {
+                time = consume(worker, time);
+            }
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private long consume(Worker worker, long idleStart) throws InterruptedException {
+        Job<?, ?> job;
+        int index;
+        long start;
+        synchronized (ready) {
+            idleCount++;
             try {
-                while (!Thread.interrupted()) {
-                    consume();
+                long deadline = System.nanoTime() + keepAliveTime;
+                while (ready.isEmpty()) {
+                    if (closed) {
+                        // Interruption could be swallowed by mapper
+                        throw new InterruptedException("Mapper is closed");
+                    }
+                    if (workers.size() > coreCount) {
+                        long timeout = deadline - System.nanoTime();
+                        if (timeout <= 0) {
+                            worker.idleTime += System.nanoTime() - idleStart;
+                            retire(worker);
+                            return System.nanoTime();
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(ready, timeout);
+                    } else {
+                        ready.wait();
+                    }
                 }
-            } catch (InterruptedException ignore) {
+            } finally {
+                idleCount--;
+            }
+            start = System.nanoTime();
+            Tenant tenant = ready.peekFirst();
+            job = tenant.jobs.element();
+            index = job.nextIndex++;
+            if (job.nextIndex == job.args.size()) {
+                tenant.jobs.remove();
             }
-        })).limit(threadCount).collect(Collectors.toList());
-        threads.forEach(Thread::start);
+
+            long waitTime = start - job.submitTime;
+            queueDepth--;
+            tenant.queueDepth--;
+            tenant.started++;
+            tenant.totalWaitTime += waitTime;
+            tenant.maxWaitTime = Math.max(tenant.maxWaitTime, waitTime);
+
+            if (tenant.jobs.isEmpty()) {
+                ready.removeFirst();
+                tenant.credit = tenant.weight;
+            } else if (--tenant.credit == 0) {
+                tenant.credit = tenant.weight;
+                ready.addLast(ready.removeFirst());
+            }
+        }
+        worker.idleTime += start - idleStart;
+        boolean success = job.run(index);
+        if (job.aborted) {
+            job.skip(drop(job));
+        }
+        long end = System.nanoTime();
+        worker.taskLatency.record(end - start);
+        worker.busyTime += end - start;
+        worker.completed++;
+        if (!success) {
+            worker.failed++;
+        }
+        return end;
     }
 
-    private void consume() throws InterruptedException {
-        Runnable task;
-        synchronized (tasks) {
-            while (tasks.isEmpty()) {
-                tasks.wait();
+    private void produce(Job<?, ?> job) {
+        synchronized (ready) {
+            if (closed) {
+                throw new IllegalStateException("Mapper is closed");
+            }
+            if (job.args.isEmpty()) {
+                return;
+            }
+            Tenant tenant = job.tenant;
+            tenant.jobs.add(job);
+            queueDepth += job.args.size();
+            queueHighWaterMark = Math.max(queueHighWaterMark, queueDepth);
+            tenant.queueDepth += job.args.size();
+            tenant.submitted += job.args.size();
+            if (tenant.jobs.size() == 1) {
+                tenant.credit = tenant.weight;
+                ready.addLast(tenant);
+            }
+            for (long backlog = queueDepth - idleCount; backlog > 0 && workers.size() < maxCount && !closed; backlog--) {
+                spawn();
             }
-            task = tasks.poll();
+            ready.notifyAll();
         }
-        task.run();
     }
 
-    private void produce(Runnable task) {
-        synchronized (tasks) {
-            tasks.add(task);
-            tasks.notify();
+    private int drop(Job<?, ?> job) {
+        synchronized (ready) {
+            Tenant tenant = job.tenant;
+            if (!tenant.jobs.remove(job)) {
+                return 0;
+            }
+            int dropped = job.args.size() - job.nextIndex;
+            queueDepth -= dropped;
+            tenant.queueDepth -= dropped;
+            job.nextIndex = job.args.size();
+            if (tenant.jobs.isEmpty()) {
+                ready.remove(tenant);
+            }
+            return dropped;
+        }
+    }
+
+    /**
+     * Sets fail-fast mode for subsequent calls. In this mode the first exception thrown by mapper
+     * drops not yet started elements of the call, so it fails as soon as running elements are finished.
+     *
+     * @param failFast {@code true} to enable fail-fast mode, disabled by default
+     */
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
+
+    private Tenant getTenant(String name) {
+        Objects.requireNonNull(name, "Tenant name can't be null");
+        synchronized (ready) {
+            return tenants.computeIfAbsent(name, Tenant::new);
+        }
+    }
+
+    /**
+     * Sets count of elements dispatched from {@code tenant} calls per round-robin turn.
+     *
+     * @param tenant tenant name
+     * @param weight positive weight, 1 by default
+     */
+    public void setWeight(String tenant, int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight must be positive");
         }
+        synchronized (ready) {
+            getTenant(tenant).weight = weight;
+        }
+    }
+
+    /**
+     * Returns queue statistics of named tenants.
+     *
+     * @return map from tenant name to its statistics snapshot
+     */
+    public Map<String, TenantStatistics> getTenantStatistics() {
+        synchronized (ready) {
+            return tenants.values().stream()
+                    .collect(Collectors.toMap(tenant -> tenant.name, Tenant::getStatistics));
+        }
+    }
+
+    /**
+     * Returns snapshot of queue, work threads and latency statistics.
+     *
+     * @return statistics snapshot
+     */
+    public MapperStatistics getStatistics() {
+        long depth;
+        long highWaterMark;
+        List<Worker> live;
+        WorkerStatistics retiredStatistics;
+        LatencyHistogram taskLatency;
+        int spawned;
+        int retiredWorkers;
+        synchronized (ready) {
+            depth = queueDepth;
+            highWaterMark = queueHighWaterMark;
+            live = new ArrayList<>(workers);
+            retiredStatistics = retired.getStatistics();
+            taskLatency = retired.taskLatency.copy();
+            spawned = spawnedCount;
+            retiredWorkers = retiredCount;
+        }
+        live.forEach(worker -> taskLatency.add(worker.taskLatency));
+        return new MapperStatistics(depth, highWaterMark, spawned, retiredWorkers,
+                live.stream().map(Worker::getStatistics).collect(Collectors.toList()),
+                retiredStatistics, taskLatency, callLatency.copy());
+    }
+
+    /**
+     * Registers this mapper in platform MBean server. It is unregistered on {@link #close()}.
+     *
+     * @return name of registered MBean
+     * @throws JMException if registration failed
+     */
+    public synchronized ObjectName registerMBean() throws JMException {
+        if (objectName == null) {
+            ObjectName mBeanName = new ObjectName(getClass().getPackageName() + ":type=ParallelMapper,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, mBeanName);
+            objectName = mBeanName;
+        }
+        return objectName;
+    }
+
+    @Override
+    public int getWorkerCount() {
+        synchronized (ready) {
+            return workers.size();
+        }
+    }
+
+    @Override
+    public int getSpawnedWorkerCount() {
+        synchronized (ready) {
+            return spawnedCount;
+        }
+    }
+
+    @Override
+    public int getRetiredWorkerCount() {
+        synchronized (ready) {
+            return retiredCount;
+        }
+    }
+
+    @Override
+    public long getQueueDepth() {
+        synchronized (ready) {
+            return queueDepth;
+        }
+    }
+
+    @Override
+    public long getQueueHighWaterMark() {
+        synchronized (ready) {
+            return queueHighWaterMark;
+        }
+    }
+
+    @Override
+    public long getCompletedTasks() {
+        return getStatistics().getCompletedTasks();
+    }
+
+    @Override
+    public long getFailedTasks() {
+        return getStatistics().getFailedTasks();
+    }
+
+    @Override
+    public double getUtilization() {
+        return getStatistics().getUtilization();
+    }
+
+    @Override
+    public long getTaskLatencyP50() {
+        return getStatistics().getTaskLatency().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getTaskLatencyP99() {
+        return getStatistics().getTaskLatency().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getTaskLatencyP999() {
+        return getStatistics().getTaskLatency().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getCallLatencyP50() {
+        return callLatency.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getCallLatencyP99() {
+        return callLatency.getValueAtPercentile(99);
     }
 
     public <T, R> List<R> map(Function<? super T, ? extends R> mapper, List<? extends T> args) throws InterruptedException {
-        final ListWrapper<R> listWrapper = new ListWrapper<>(args.size());
-        RuntimeException[] exception = new RuntimeException[]{null};
-        for (int i = 0; i < args.size(); i++) {
-            final int index = i;
-            produce(() -> {
-                try {
-                    listWrapper.setElement(index, mapper.apply(args.get(index)));
-                } catch (RuntimeException e) {
-                    synchronized (exception) {
-                        if (exception[0] == null) {
-                            exception[0] = e;
-                        } else {
-                            exception[0].addSuppressed(e);
-                        }
-                    }
-                }
-            });
+        return getResult(mapAsync(mapper, args));
+    }
+
+    /**
+     * Version of {@link #map(Function, List)} sharing dispatch turn with other {@code tenant} calls.
+     *
+     * @param tenant tenant name
+     * @param mapper function to apply
+     * @param args   arguments of {@code mapper}
+     * @return {@code mapper} results in order of {@code args}
+     * @throws InterruptedException if calling thread was interrupted
+     */
+    public <T, R> List<R> map(String tenant, Function<? super T, ? extends R> mapper,
+                              List<? extends T> args) throws InterruptedException {
+        return getResult(mapAsync(tenant, mapper, args));
+    }
+
+    private static <R> List<R> getResult(CompletableFuture<List<R>> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            throw (RuntimeException) e.getCause();
         }
-        List<R> result = listWrapper.getResult();
-        if (exception[0] == null) {
-            return result;
-        } else {
-            throw exception[0];
+    }
+
+    /**
+     * Asynchronous version of {@link #map(Function, List)}.
+     * Cancellation of returned future drops not yet started tasks.
+     *
+     * @param mapper function to apply
+     * @param args   arguments of {@code mapper}
+     * @return future of {@code mapper} results in order of {@code args}
+     */
+    public <T, R> CompletableFuture<List<R>> mapAsync(Function<? super T, ? extends R> mapper, List<? extends T> args) {
+        return mapAsync(new Tenant(null), mapper, args);
+    }
+
+    /**
+     * Asynchronous version of {@link #map(String, Function, List)}.
+     * Cancellation of returned future drops not yet started tasks.
+     *
+     * @param tenant tenant name
+     * @param mapper function to apply
+     * @param args   arguments of {@code mapper}
+     * @return future of {@code mapper} results in order of {@code args}
+     */
+    public <T, R> CompletableFuture<List<R>> mapAsync(String tenant, Function<? super T, ? extends R> mapper,
+                                                      List<? extends T> args) {
+        return mapAsync(getTenant(tenant), mapper, args);
+    }
+
+    private <T, R> CompletableFuture<List<R>> mapAsync(Tenant tenant, Function<? super T, ? extends R> mapper,
+                                                       List<? extends T> args) {
+        List<R> result = new ArrayList<>(Collections.nCopies(args.size(), null));
+        CompletableFuture<Void> completion = mapStreaming(tenant, mapper, args, result::set);
+        CompletableFuture<List<R>> future = completion.thenApply(ignored -> result);
+        future.whenComplete((ignored, e) -> {
+            if (future.isCancelled()) {
+                completion.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Applies {@code mapper} to {@code args} and passes each result with its index
+     * to {@code consumer} in order of completion. {@code consumer} is called from work threads.
+     * Cancellation of returned future drops not yet started tasks.
+     *
+     * @param mapper   function to apply
+     * @param args     arguments of {@code mapper}
+     * @param consumer receiver of argument index and {@code mapper} result
+     * @return future which is completed when all results are consumed
+     */
+    public <T, R> CompletableFuture<Void> mapStreaming(Function<? super T, ? extends R> mapper, List<? extends T> args,
+                                                       BiConsumer<Integer, ? super R> consumer) {
+        return mapStreaming(new Tenant(null), mapper, args, consumer);
+    }
+
+    /**
+     * Version of {@link #mapStreaming(Function, List, BiConsumer)} sharing dispatch turn
+     * with other {@code tenant} calls.
+     *
+     * @param tenant   tenant name
+     * @param mapper   function to apply
+     * @param args     arguments of {@code mapper}
+     * @param consumer receiver of argument index and {@code mapper} result
+     * @return future which is completed when all results are consumed
+     */
+    public <T, R> CompletableFuture<Void> mapStreaming(String tenant, Function<? super T, ? extends R> mapper,
+                                                       List<? extends T> args, BiConsumer<Integer, ? super R> consumer) {
+        return mapStreaming(getTenant(tenant), mapper, args, consumer);
+    }
+
+    private <T, R> CompletableFuture<Void> mapStreaming(Tenant tenant, Function<? super T, ? extends R> mapper,
+                                                        List<? extends T> args, BiConsumer<Integer, ? super R> consumer) {
+        final Job<T, R> job = new Job<>(tenant, mapper, args, consumer, failFast);
+        produce(job);
+        if (args.isEmpty()) {
+            job.future.complete(null);
+            return job.future;
         }
+        job.future.whenComplete((ignored, e) -> {
+            callLatency.record(System.nanoTime() - job.submitTime);
+            if (job.future.isCancelled()) {
+                drop(job);
+            }
+        });
+        return job.future;
     }
 
+    /**
+     * Stops work threads. Calls having not started elements fail with {@link CancellationException},
+     * subsequent calls are rejected with {@link IllegalStateException}.
+     */
     @Override
     public void close() {
+        synchronized (this) {
+            if (objectName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                } catch (JMException ignored) {
+                }
+                objectName = null;
+            }
+        }
+        List<Thread> threads;
+        List<Job<?, ?>> cancelled = new ArrayList<>();
+        synchronized (ready) {
+            closed = true;
+            threads = workers.stream().map(worker -> worker.thread).collect(Collectors.toList());
+            for (Tenant tenant : ready) {
+                cancelled.addAll(tenant.jobs);
+                tenant.queueDepth -= tenant.jobs.stream().mapToInt(job -> job.args.size() - job.nextIndex).sum();
+                tenant.jobs.clear();
+            }
+            ready.clear();
+            queueDepth = 0;
+        }
+        cancelled.forEach(job -> job.future.completeExceptionally(new CancellationException("Mapper is closed")));
         threads.forEach(Thread::interrupt);
         threads.forEach(thread -> {
             try {
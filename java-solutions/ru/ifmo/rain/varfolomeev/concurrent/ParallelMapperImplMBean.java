@@ -0,0 +1,32 @@
+package ru.ifmo.rain.varfolomeev.concurrent;
+
+/**
+ * Management interface of {@link ParallelMapperImpl}. Times are measured in nanoseconds.
+ */
+public interface ParallelMapperImplMBean {
+    int getWorkerCount();
+
+    int getSpawnedWorkerCount();
+
+    int getRetiredWorkerCount();
+
+    long getQueueDepth();
+
+    long getQueueHighWaterMark();
+
+    long getCompletedTasks();
+
+    long getFailedTasks();
+
+    double getUtilization();
+
+    long getTaskLatencyP50();
+
+    long getTaskLatencyP99();
+
+    long getTaskLatencyP999();
+
+    long getCallLatencyP50();
+
+    long getCallLatencyP99();
+}
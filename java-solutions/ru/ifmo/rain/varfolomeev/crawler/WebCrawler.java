@@ -11,8 +11,12 @@ public class WebCrawler implements Crawler {
     private final Downloader downloader;
     private final ExecutorService downloaderExecutor;
     private final ExecutorService extractorExecutor;
+    private final ScheduledExecutorService delayExecutor;
     private final int perHost;
+    private final double perHostRate;
+    private final int perHostBurst;
     private final ConcurrentMap<String, HostManager> hosts;
+    private final Deque<HostManager> readyHosts;
 
     /**
      * Creates new WebCrawler instance
@@ -23,11 +27,38 @@ public class WebCrawler implements Crawler {
      * @param perHost         count of one host pages that can be downloaded in parallel
      */
     public WebCrawler(Downloader downloader, int downloaderCount, int extractorCount, int perHost) {
+        this(downloader, downloaderCount, extractorCount, perHost, Double.POSITIVE_INFINITY, 1);
+    }
+
+    /**
+     * Creates new WebCrawler instance limiting rate of downloads from every host.
+     * Downloads delayed by the limit wait on timer, not on downloader threads.
+     *
+     * @param downloader      {@link Downloader} which will be used to download pages
+     * @param downloaderCount count of threads to download pages
+     * @param extractorCount  count of threads to download pages
+     * @param perHost         count of one host pages that can be downloaded in parallel
+     * @param perHostRate     count of one host pages that can be downloaded per second,
+     *                        {@link Double#POSITIVE_INFINITY} for no limit
+     * @param perHostBurst    count of one host pages that can be downloaded at once after idle period
+     */
+    public WebCrawler(Downloader downloader, int downloaderCount, int extractorCount, int perHost,
+                      double perHostRate, int perHostBurst) {
+        if (!(perHostRate > 0)) {
+            throw new IllegalArgumentException("Per host rate must be positive");
+        }
+        if (perHostBurst < 1) {
+            throw new IllegalArgumentException("Per host burst must be positive");
+        }
         this.downloader = downloader;
         downloaderExecutor = Executors.newFixedThreadPool(downloaderCount);
         extractorExecutor = Executors.newFixedThreadPool(extractorCount);
+        delayExecutor = Double.isInfinite(perHostRate) ? null : Executors.newSingleThreadScheduledExecutor();
         this.perHost = perHost;
+        this.perHostRate = perHostRate;
+        this.perHostBurst = perHostBurst;
         hosts = new ConcurrentHashMap<>();
+        readyHosts = new ArrayDeque<>();
     }
 
     @Override
@@ -39,6 +70,9 @@ public class WebCrawler implements Crawler {
     public void close() {
         downloaderExecutor.shutdownNow();
         extractorExecutor.shutdownNow();
+        if (delayExecutor != null) {
+            delayExecutor.shutdownNow();
+        }
     }
 
     private class SessionContext {
@@ -98,29 +132,105 @@ public class WebCrawler implements Crawler {
         }
     }
 
+    /**
+     * Runs one ready task of the first host in {@link #readyHosts} and moves the host to the end,
+     * so free downloader threads serve hosts in round-robin order.
+     * One call is submitted per ready task, so there is always a task to run.
+     */
+    private void runReadyTask() {
+        Runnable task;
+        synchronized (readyHosts) {
+            HostManager hostManager = readyHosts.poll();
+            task = hostManager.ready.poll();
+            if (hostManager.ready.isEmpty()) {
+                hostManager.scheduled = false;
+            } else {
+                readyHosts.add(hostManager);
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Limits count of parallel downloads from host by {@link #perHost}
+     * and their rate by token bucket of {@link #perHostBurst} tokens refilled at {@link #perHostRate}.
+     * Token is reserved at task start, so task can wait for it on timer.
+     * Every finished task starts the next queued one.
+     */
     private class HostManager {
-        private final BlockingQueue<Runnable> queue;
-        private final Semaphore semaphore;
+        private final Queue<Runnable> queue;
+        private final Queue<Runnable> ready;
+        private boolean scheduled;
+        private int running;
+        private double tokens;
+        private long refillTime;
 
         private HostManager() {
-            this.queue = new LinkedBlockingQueue<>();
-            this.semaphore = new Semaphore(perHost);
+            queue = new ArrayDeque<>();
+            ready = new ArrayDeque<>();
+            scheduled = false;
+            running = 0;
+            tokens = perHostBurst;
+            refillTime = System.nanoTime();
         }
 
         private void addTask(Runnable task) {
-            if (semaphore.tryAcquire()) {
-                downloaderExecutor.submit(task);
-            } else {
-                queue.add(task);
+            synchronized (this) {
+                if (running == perHost) {
+                    queue.add(task);
+                    return;
+                }
+                running++;
             }
+            start(task);
         }
 
         private void runNextTask() {
             Runnable task;
-            while ((task = queue.poll()) != null) {
-                task.run();
+            synchronized (this) {
+                task = queue.poll();
+                if (task == null) {
+                    running--;
+                    return;
+                }
+            }
+            start(task);
+        }
+
+        private void start(Runnable task) {
+            long delay = reserveToken();
+            if (delay == 0) {
+                submit(task);
+            } else {
+                delayExecutor.schedule(() -> submit(task), delay, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void submit(Runnable task) {
+            synchronized (readyHosts) {
+                ready.add(task);
+                if (!scheduled) {
+                    scheduled = true;
+                    readyHosts.add(this);
+                }
+            }
+            downloaderExecutor.submit(WebCrawler.this::runReadyTask);
+        }
+
+        /**
+         * Takes token from the bucket, possibly making it negative.
+         *
+         * @return nanoseconds to wait for the token to be refilled
+         */
+        private synchronized long reserveToken() {
+            if (delayExecutor == null) {
+                return 0;
             }
-            semaphore.release();
+            long now = System.nanoTime();
+            tokens = Math.min(perHostBurst, tokens + (now - refillTime) * perHostRate / TimeUnit.SECONDS.toNanos(1));
+            refillTime = now;
+            tokens--;
+            return tokens >= 0 ? 0 : (long) (-tokens / perHostRate * TimeUnit.SECONDS.toNanos(1));
         }
     }
 
@@ -8,10 +8,35 @@ import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.getIntArgument;
 
 public abstract class AbstractHelloClient implements HelloClient {
+    final AtomicLong retransmissionCount = new AtomicLong();
+    HelloLogger logger = AsyncHelloLogger.getDefault();
+
+    /**
+     * Sets sink of sent and received requests events.
+     *
+     * @param logger logger to use, {@link HelloLogger#NONE} to disable logging
+     */
+    public void setLogger(HelloLogger logger) {
+        if (logger == null) {
+            throw new IllegalArgumentException("Logger can't be 'null'");
+        }
+        this.logger = logger;
+    }
+
+    /**
+     * Returns count of requests resent during the last run.
+     *
+     * @return retransmission count
+     */
+    public long getRetransmissionCount() {
+        return retransmissionCount.get();
+    }
+
     void validateParameters(String prefix, int threadCount, int requestCount) {
         if (threadCount < 1) {
             throw new IllegalArgumentException("Thread count must be positive");
@@ -24,6 +49,7 @@ public abstract class AbstractHelloClient implements HelloClient {
         if (prefix == null) {
             throw new IllegalArgumentException("Request prefix can't be 'null'");
         }
+        retransmissionCount.set(0);
     }
 
     SocketAddress getSocketAddress(String hostname, int port) {
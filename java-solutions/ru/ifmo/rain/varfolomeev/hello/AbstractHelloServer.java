@@ -1,23 +1,96 @@
 package ru.ifmo.rain.varfolomeev.hello;
 
 import info.kgeorgiy.java.advanced.hello.HelloServer;
+import ru.ifmo.rain.varfolomeev.hello.HelloLogger.Level;
 
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.getIntArgument;
 
 public abstract class AbstractHelloServer implements HelloServer {
     static final String PREFIX = "Hello, ";
+    static final byte[] PREFIX_BYTES = PREFIX.getBytes(StandardCharsets.UTF_8);
+
+    private static final long JOIN_TIMEOUT = 1;
 
     private ExecutorService distributionExecutor = null;
     private boolean started = false;
+    private volatile boolean accepting = false;
+    private volatile boolean draining = false;
+    private volatile long drainDeadline = 0;
+    HelloLogger logger = AsyncHelloLogger.getDefault();
+    private int batchLimit = 1;
+    private AtomicLongArray batchSizes = new AtomicLongArray(batchLimit + 1);
+    final AtomicLong received = new AtomicLong();
+    final AtomicLong processed = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Snapshot of server counters since the last start.
+     */
+    public static class Statistics {
+        private final long received;
+        private final long processed;
+        private final long dropped;
+
+        Statistics(long received, long processed, long dropped) {
+            this.received = received;
+            this.processed = processed;
+            this.dropped = dropped;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Returns count of received requests neither answered, nor dropped.
+         * After the server is closed, it is count of requests abandoned on shutdown.
+         *
+         * @return in-flight requests count
+         */
+        public long getInFlight() {
+            return received - processed - dropped;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("received=%d, processed=%d, dropped=%d, in-flight=%d",
+                    received, processed, dropped, getInFlight());
+        }
+    }
 
     abstract void startImplementation(int port, int threadCount);
 
     abstract void runServer();
 
+    /**
+     * Waits for received requests to be answered. Called after server stopped accepting new ones.
+     *
+     * @param deadline {@link System#nanoTime()} value to give up at
+     * @return {@code true} if every received request was answered
+     */
+    abstract boolean drain(long deadline) throws InterruptedException;
+
+    abstract void closeImplementation();
+
     @Override
     public synchronized void start(int port, int threadCount) {
         if (threadCount < 1) {
@@ -28,8 +101,14 @@ public abstract class AbstractHelloServer implements HelloServer {
             throw new IllegalStateException("The server is already started");
         }
 
+        batchSizes = new AtomicLongArray(batchLimit + 1);
+        received.set(0);
+        processed.set(0);
+        dropped.set(0);
         startImplementation(port, threadCount);
 
+        draining = false;
+        accepting = true;
         distributionExecutor = Executors.newSingleThreadExecutor();
         distributionExecutor.submit(this::runServer);
         started = true;
@@ -39,10 +118,174 @@ public abstract class AbstractHelloServer implements HelloServer {
         return started;
     }
 
+    boolean isAccepting() {
+        return accepting;
+    }
+
+    boolean isDraining() {
+        return draining;
+    }
+
+    long getDrainDeadline() {
+        return drainDeadline;
+    }
+
+    boolean awaitReceiver(long deadline) throws InterruptedException {
+        distributionExecutor.shutdown();
+        return awaitTermination(distributionExecutor, deadline);
+    }
+
+    static boolean awaitTermination(ExecutorService executorService, long deadline) throws InterruptedException {
+        return executorService.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    static void shutdownAndJoin(ExecutorService executorService) {
+        executorService.shutdownNow();
+        try {
+            executorService.awaitTermination(JOIN_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets maximal count of datagrams processed per wakeup. Every available datagram is
+     * drained up to this limit and responses are sent together. Should be called before {@link #start(int, int)}.
+     *
+     * @param batchLimit positive batch limit, 1 by default
+     */
+    public synchronized void setBatchLimit(int batchLimit) {
+        if (batchLimit < 1) {
+            throw new IllegalArgumentException("Batch limit must be positive");
+        }
+        if (started) {
+            throw new IllegalStateException("The server is already started");
+        }
+        this.batchLimit = batchLimit;
+    }
+
+    /**
+     * Sets sink of server errors events.
+     *
+     * @param logger logger to use, {@link HelloLogger#NONE} to disable logging
+     */
+    public void setLogger(HelloLogger logger) {
+        if (logger == null) {
+            throw new IllegalArgumentException("Logger can't be 'null'");
+        }
+        this.logger = logger;
+    }
+
+    int getBatchLimit() {
+        return batchLimit;
+    }
+
+    void recordBatch(int size) {
+        batchSizes.incrementAndGet(size);
+    }
+
+    /**
+     * Returns histogram of processed batch sizes since the last start.
+     *
+     * @return array where i-th element is count of batches of size i
+     */
+    public long[] getBatchSizeHistogram() {
+        AtomicLongArray sizes = batchSizes;
+        long[] histogram = new long[sizes.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = sizes.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Returns snapshot of received, processed and dropped datagrams counters.
+     * Datagrams which could not be sent are counted as dropped.
+     *
+     * @return statistics snapshot
+     */
+    public Statistics getStatistics() {
+        return new Statistics(received.get(), processed.get(), dropped.get());
+    }
+
+    /**
+     * Waits for receiving thread to stop after the server stopped accepting requests.
+     *
+     * @return {@code true} if receiving thread stopped
+     */
+    boolean joinReceiver() {
+        try {
+            return awaitReceiver(System.nanoTime() + TimeUnit.SECONDS.toNanos(JOIN_TIMEOUT));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Reads datagrams left in socket buffer on close, so they are counted as received and abandoned.
+     * Socket is read after receiving thread stops only, as concurrent receives are not reliable.
+     * Every datagram takes at least a byte of the buffer, so reading stops even if new ones keep arriving.
+     */
+    void receiveAbandoned(DatagramSocket datagramSocket) {
+        if (!joinReceiver()) {
+            return;
+        }
+        DatagramPacket packet = new DatagramPacket(new byte[1], 1);
+        try {
+            datagramSocket.setSoTimeout(1);
+            for (int limit = datagramSocket.getReceiveBufferSize(); limit > 0; limit--) {
+                datagramSocket.receive(packet);
+                received.incrementAndGet();
+            }
+        } catch (SocketTimeoutException ignored) {
+        } catch (IOException e) {
+            if (!datagramSocket.isClosed()) {
+                logger.log(Level.ERROR, "Failed to receive abandoned packets: ", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops receiving new requests, waits for already received ones to be answered and closes the server.
+     * When timeout expires, the server is closed immediately and the rest of requests is abandoned.
+     * Abandoned requests are reported by {@link Statistics#getInFlight()} of {@link #getStatistics()}.
+     *
+     * @param timeout maximal time to wait for
+     * @param unit    unit of {@code timeout}
+     * @return {@code true} if every received request was answered before timeout
+     */
+    public synchronized boolean closeGracefully(long timeout, TimeUnit unit) {
+        if (!started) {
+            return true;
+        }
+        drainDeadline = System.nanoTime() + unit.toNanos(timeout);
+        draining = true;
+        accepting = false;
+        boolean drained;
+        try {
+            drained = drain(drainDeadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            drained = false;
+        }
+        close();
+        return drained;
+    }
+
+    /**
+     * Closes the server immediately, dropping requests not answered yet. Returns after all server threads finish.
+     */
     @Override
-    public void close() {
-        distributionExecutor.shutdownNow();
+    public synchronized void close() {
+        if (!started) {
+            return;
+        }
+        accepting = false;
+        closeImplementation();
+        shutdownAndJoin(distributionExecutor);
         started = false;
+        logger.flush();
     }
 
     static void main(HelloServer server, String[] args) {
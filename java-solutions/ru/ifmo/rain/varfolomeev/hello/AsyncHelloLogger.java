@@ -0,0 +1,178 @@
+package ru.ifmo.rain.varfolomeev.hello;
+
+import java.io.PrintStream;
+
+/**
+ * Logger which puts events into bounded ring buffer and writes them by batches in background thread.
+ * Events logged while buffer is full are dropped and counted.
+ */
+public class AsyncHelloLogger implements HelloLogger, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    private static AsyncHelloLogger defaultLogger = null;
+
+    private final PrintStream out;
+    private final Level threshold;
+    private final Level[] levels;
+    private final String[] messages;
+    private final Object[] arguments;
+    private final Thread writer;
+    private int head = 0;
+    private int size = 0;
+    private long written = 0;
+    private long logged = 0;
+    private long dropped = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates logger and starts its writer thread.
+     *
+     * @param out       stream to write events to
+     * @param threshold minimal level of written events
+     * @param capacity  count of events which can wait to be written
+     */
+    public AsyncHelloLogger(PrintStream out, Level threshold, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.out = out;
+        this.threshold = threshold;
+        levels = new Level[capacity];
+        messages = new String[capacity];
+        arguments = new Object[capacity];
+        writer = new Thread(this::write, "HelloLogger-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns shared logger of {@link Level#INFO} events to {@link System#out}.
+     * It is flushed on virtual machine shutdown.
+     *
+     * @return default logger
+     */
+    public static synchronized AsyncHelloLogger getDefault() {
+        if (defaultLogger == null) {
+            defaultLogger = new AsyncHelloLogger(System.out, Level.INFO, DEFAULT_CAPACITY);
+            Runtime.getRuntime().addShutdownHook(new Thread(defaultLogger::close));
+        }
+        return defaultLogger;
+    }
+
+    @Override
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    @Override
+    public void log(Level level, String message, Object argument) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        synchronized (this) {
+            if (size == levels.length || closed) {
+                dropped++;
+                return;
+            }
+            int tail = (head + size) % levels.length;
+            levels[tail] = level;
+            messages[tail] = message;
+            arguments[tail] = argument;
+            size++;
+            logged++;
+            if (size == 1) {
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Returns count of events dropped because of full buffer.
+     *
+     * @return dropped events count
+     */
+    public synchronized long getDroppedCount() {
+        return dropped;
+    }
+
+    @Override
+    public void flush() {
+        synchronized (this) {
+            long target = logged;
+            while (written < target && writer.isAlive()) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void write() {
+        Level[] batchLevels = new Level[levels.length];
+        String[] batchMessages = new String[levels.length];
+        Object[] batchArguments = new Object[levels.length];
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            int count;
+            synchronized (this) {
+                while (size == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                if (size == 0) {
+                    notifyAll();
+                    return;
+                }
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    int index = (head + i) % levels.length;
+                    batchLevels[i] = levels[index];
+                    batchMessages[i] = messages[index];
+                    batchArguments[i] = arguments[index];
+                    messages[index] = null;
+                    arguments[index] = null;
+                }
+                head = (head + count) % levels.length;
+                size -= count;
+            }
+            for (int i = 0; i < count; i++) {
+                if (batchLevels[i] != Level.INFO) {
+                    batch.append(batchLevels[i]).append(": ");
+                }
+                batch.append(batchMessages[i]);
+                if (batchArguments[i] != null) {
+                    batch.append(batchArguments[i]);
+                }
+                batch.append(System.lineSeparator());
+                batchArguments[i] = null;
+            }
+            out.print(batch);
+            out.flush();
+            batch.setLength(0);
+            synchronized (this) {
+                written += count;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Writes remaining events and stops writer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
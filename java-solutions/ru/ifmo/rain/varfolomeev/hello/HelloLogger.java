@@ -0,0 +1,42 @@
+package ru.ifmo.rain.varfolomeev.hello;
+
+/**
+ * Sink of HelloUDP clients and servers events. Message and argument are passed separately,
+ * so they are concatenated only if event is actually written.
+ */
+public interface HelloLogger {
+    /**
+     * Logger which drops every event.
+     */
+    HelloLogger NONE = new HelloLogger() {
+        @Override
+        public boolean isEnabled(Level level) {
+            return false;
+        }
+
+        @Override
+        public void log(Level level, String message, Object argument) {
+        }
+    };
+
+    enum Level {
+        INFO, WARNING, ERROR
+    }
+
+    boolean isEnabled(Level level);
+
+    /**
+     * Logs event consisting of {@code message} followed by {@code argument} if it isn't {@code null}.
+     */
+    void log(Level level, String message, Object argument);
+
+    default void log(Level level, String message) {
+        log(level, message, null);
+    }
+
+    /**
+     * Waits until all logged events are written.
+     */
+    default void flush() {
+    }
+}
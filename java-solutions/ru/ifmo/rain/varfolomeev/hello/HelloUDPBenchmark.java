@@ -0,0 +1,299 @@
+package ru.ifmo.rain.varfolomeev.hello;
+
+import info.kgeorgiy.java.advanced.hello.HelloServer;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.BUFFER_SIZE;
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.getIntArgument;
+
+/**
+ * Open-loop load generator for HelloUDP servers. Requests are sent at fixed rate
+ * and latency of every response is measured from the moment its request was scheduled to be sent,
+ * so stalls of the generator or the server are not hidden (no coordinated omission).
+ */
+public class HelloUDPBenchmark {
+    private static final String CSV_HEADER = "server,threads,concurrency,payload,rate,duration,"
+            + "sent,received,lost,throughput,p50_us,p99_us,p999_us,max_us";
+    private static final int ID_LENGTH = 16;
+    private static final long[] POWERS = new long[ID_LENGTH];
+    private static final long DRAIN_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    static {
+        POWERS[ID_LENGTH - 1] = 1;
+        for (int i = ID_LENGTH - 2; i >= 0; i--) {
+            POWERS[i] = POWERS[i + 1] * 10;
+        }
+    }
+
+    private final int port;
+    private final int concurrency;
+    private final int payloadSize;
+    private final int rate;
+    private final int duration;
+    private final Histogram latency = new Histogram();
+    private long sent = 0;
+    private long received = 0;
+
+    private HelloUDPBenchmark(int port, int concurrency, int payloadSize, int rate, int duration) {
+        this.port = port;
+        this.concurrency = concurrency;
+        this.payloadSize = Math.max(ID_LENGTH, payloadSize);
+        this.rate = rate;
+        this.duration = duration;
+    }
+
+    private void run() throws IOException, InterruptedException {
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        List<DatagramChannel> channels = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            for (int i = 0; i < concurrency; i++) {
+                DatagramChannel channel = DatagramChannel.open();
+                channels.add(channel);
+                channel.connect(address).configureBlocking(false).register(selector, SelectionKey.OP_READ);
+            }
+
+            long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+            long requestCount = (long) rate * duration;
+            long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+            Thread receiver = new Thread(() -> receive(selector, start, interval, requestCount), "HelloUDPBenchmark-receiver");
+            receiver.start();
+            send(channels, start, interval, requestCount);
+            receiver.join();
+        } finally {
+            for (DatagramChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    private void send(List<DatagramChannel> channels, long start, long interval, long requestCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(payloadSize);
+        byte[] padding = new byte[payloadSize - ID_LENGTH];
+        Arrays.fill(padding, (byte) 'x');
+        for (long id = 0; id < requestCount; id++) {
+            long delay = start + id * interval - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            buffer.clear();
+            for (int i = ID_LENGTH - 1; i >= 0; i--) {
+                buffer.put(i, (byte) ('0' + (id / POWERS[i]) % 10));
+            }
+            buffer.position(ID_LENGTH).put(padding).flip();
+            try {
+                channels.get((int) (id % channels.size())).write(buffer);
+            } catch (IOException ignored) {
+                // Counted as lost
+            }
+        }
+        synchronized (this) {
+            sent = requestCount;
+        }
+    }
+
+    private void receive(Selector selector, long start, long interval, long requestCount) {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE + payloadSize);
+        long deadline = start + requestCount * interval + DRAIN_TIMEOUT;
+        long count = 0;
+        while (count < requestCount && System.nanoTime() < deadline) {
+            try {
+                selector.select(TimeUnit.NANOSECONDS.toMillis(DRAIN_TIMEOUT) / 10);
+            } catch (IOException e) {
+                break;
+            }
+            for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                DatagramChannel channel = (DatagramChannel) iterator.next().channel();
+                iterator.remove();
+                try {
+                    buffer.clear();
+                    while (channel.read(buffer) > 0) {
+                        long now = System.nanoTime();
+                        long id = parseId(buffer);
+                        if (id >= 0 && id < requestCount) {
+                            latency.record(now - (start + id * interval));
+                            count++;
+                        }
+                        buffer.clear();
+                    }
+                } catch (IOException ignored) {
+                    // Counted as lost
+                }
+            }
+        }
+        synchronized (this) {
+            received = count;
+        }
+    }
+
+    private static long parseId(ByteBuffer buffer) {
+        int from = AbstractHelloServer.PREFIX_BYTES.length;
+        if (buffer.position() < from + ID_LENGTH) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = from; i < from + ID_LENGTH; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            id = id * 10 + digit;
+        }
+        return id;
+    }
+
+    /**
+     * Histogram of non-negative values with logarithmic buckets split into
+     * {@value #SUB_BUCKETS} linear sub-buckets, so relative error is below 12.5%.
+     * Filled by the receiving thread only.
+     */
+    private static class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final long[] counts = new long[BUCKET_COUNT];
+        private long total = 0;
+        private long max = 0;
+
+        private static int getIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long getUpperBound(int index) {
+            if (index + 1 < SUB_BUCKETS) {
+                return index;
+            }
+            int next = index + 1;
+            int exponent = next / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            return ((1L << exponent) | ((long) (next % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS))) - 1;
+        }
+
+        private void record(long value) {
+            value = Math.max(value, 0);
+            counts[getIndex(value)]++;
+            total++;
+            max = Math.max(max, value);
+        }
+
+        private long getValueAtPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(getUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+
+    private synchronized String toCsv(String server, int threads) {
+        return String.join(",", server, Integer.toString(threads), Integer.toString(concurrency),
+                Integer.toString(payloadSize), Integer.toString(rate), Integer.toString(duration),
+                Long.toString(sent), Long.toString(received), Long.toString(sent - received),
+                String.format("%.1f", (double) received / duration),
+                Long.toString(toMicros(latency.getValueAtPercentile(50))),
+                Long.toString(toMicros(latency.getValueAtPercentile(99))),
+                Long.toString(toMicros(latency.getValueAtPercentile(99.9))),
+                Long.toString(toMicros(latency.getValueAtPercentile(100))));
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Starts given HelloUDP server on loopback and measures it.
+     * Usage: HelloUDPBenchmark serverClass port threads concurrency payloadSize rate duration [csvFile]
+     *
+     * @param args server class name, server port and threads count, count of client channels,
+     *             request size in bytes, requests per second, duration in seconds and optional CSV file to append results to
+     */
+    public static void main(String[] args) {
+        if (args == null || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Arguments can't be null");
+            return;
+        }
+        if (args.length != 7 && args.length != 8) {
+            System.err.println("Usage: HelloUDPBenchmark serverClass port threads concurrency payloadSize rate duration [csvFile]");
+            return;
+        }
+        int port = getIntArgument("port", args[1]);
+        int threads = getIntArgument("threads", args[2]);
+        int concurrency = getIntArgument("concurrency", args[3]);
+        int payloadSize = getIntArgument("payloadSize", args[4]);
+        int rate = getIntArgument("rate", args[5]);
+        int duration = getIntArgument("duration", args[6]);
+        if (concurrency < 1 || rate < 1 || duration < 1) {
+            System.err.println("Concurrency, rate and duration must be positive");
+            return;
+        }
+
+        HelloServer server;
+        try {
+            server = (HelloServer) Class.forName(args[0]).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            System.err.println("Can't create server " + args[0] + ": " + e.getMessage());
+            return;
+        }
+        if (server instanceof AbstractHelloServer) {
+            ((AbstractHelloServer) server).setLogger(HelloLogger.NONE);
+        }
+
+        HelloUDPBenchmark benchmark = new HelloUDPBenchmark(port, concurrency, payloadSize, rate, duration);
+        try (server) {
+            server.start(port, threads);
+            benchmark.run();
+        } catch (IOException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        System.out.println(CSV_HEADER);
+        String line = benchmark.toCsv(args[0], threads);
+        System.out.println(line);
+        if (args.length == 8) {
+            Path csv = Path.of(args[7]);
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+                if (Files.size(csv) == 0) {
+                    writer.println(CSV_HEADER);
+                }
+                writer.println(line);
+            } catch (IOException e) {
+                System.err.println("Can't write results to " + csv + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -1,13 +1,16 @@
 package ru.ifmo.rain.varfolomeev.hello;
 
+import ru.ifmo.rain.varfolomeev.hello.HelloLogger.Level;
+
 import java.io.IOException;
 import java.net.*;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
-import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.getStringFromPacket;
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.*;
 
 public class HelloUDPClient extends AbstractHelloClient {
     @Override
@@ -16,7 +19,7 @@ public class HelloUDPClient extends AbstractHelloClient {
 
         SocketAddress socketAddress = getSocketAddress(hostname, port);
 
-        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        ExecutorService executorService = newExecutor(threadCount);
         CountDownLatch latch = new CountDownLatch(threadCount);
         for (int thread = 0; thread < threadCount; thread++) {
             final int threadNumber = thread;
@@ -28,34 +31,53 @@ public class HelloUDPClient extends AbstractHelloClient {
             latch.await();
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
+        } finally {
+            logger.flush();
         }
     }
 
+    ExecutorService newExecutor(int threadCount) {
+        return Executors.newFixedThreadPool(threadCount);
+    }
+
+    int getResponseBufferSize(DatagramSocket datagramSocket) throws SocketException {
+        return datagramSocket.getReceiveBufferSize();
+    }
+
     private void sendAndReceive(SocketAddress socketAddress, String prefix,
                                 int threadNumber, int requestCount, CountDownLatch latch) {
         try (DatagramSocket datagramSocket = new DatagramSocket()) {
-            datagramSocket.setSoTimeout(500);
-            int receiveBufferSize = datagramSocket.getReceiveBufferSize();
+            RetransmissionTimer timer = new RetransmissionTimer();
+            int receiveBufferSize = getResponseBufferSize(datagramSocket);
             DatagramPacket request = new DatagramPacket(new byte[0], 0, socketAddress);
             DatagramPacket response = new DatagramPacket(new byte[receiveBufferSize], receiveBufferSize);
+            byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
             for (int requestNumber = 0; requestNumber < requestCount; requestNumber++) {
                 String requestMessage = prefix + threadNumber + '_' + requestNumber;
                 request.setData(requestMessage.getBytes(StandardCharsets.UTF_8));
+                boolean retransmitted = false;
                 while (!datagramSocket.isClosed()) {
+                    long sendTime = System.nanoTime();
                     try {
                         datagramSocket.send(request);
-                        System.out.println("Sending: " + requestMessage);
-                        datagramSocket.receive(response);
-                        String responseMessage = getStringFromPacket(response);
-                        if (responseMessage.contains(requestMessage)) {
-                            System.out.println("Receiving: " + responseMessage);
+                        logger.log(Level.INFO, "Sending: ", requestMessage);
+                        if (receive(datagramSocket, response, prefixBytes, getRequestId(threadNumber, requestNumber),
+                                sendTime + timer.getTimeout())) {
+                            if (!retransmitted) {
+                                timer.onResponse(System.nanoTime() - sendTime);
+                            }
+                            if (logger.isEnabled(Level.INFO)) {
+                                logger.log(Level.INFO, "Receiving: ", getStringFromPacket(response));
+                            }
                             break;
-                        } else {
-                            System.out.println("Fail on response validation: " + responseMessage);
                         }
+                        timer.onTimeout();
+                        logger.log(Level.WARNING, "Timeout: ", requestMessage);
                     } catch (IOException e) {
-                        System.out.println("Failed: " + requestMessage);
+                        logger.log(Level.WARNING, "Failed: ", requestMessage);
                     }
+                    retransmitted = true;
+                    retransmissionCount.incrementAndGet();
                 }
             }
         } catch (SocketException ignored) {
@@ -65,6 +87,30 @@ public class HelloUDPClient extends AbstractHelloClient {
         }
     }
 
+    /**
+     * Receives datagrams until response to given request arrives or deadline passes.
+     * Responses failed validation, like late duplicates of previous requests, are skipped,
+     * so they don't cause resending.
+     *
+     * @return {@code true} if response is received
+     */
+    private boolean receive(DatagramSocket datagramSocket, DatagramPacket response, byte[] prefixBytes,
+                            long requestId, long deadline) throws IOException {
+        for (long timeout = deadline - System.nanoTime(); timeout > 0; timeout = deadline - System.nanoTime()) {
+            datagramSocket.setSoTimeout((int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout)));
+            try {
+                datagramSocket.receive(response);
+            } catch (SocketTimeoutException e) {
+                return false;
+            }
+            if (matches(response.getData(), response.getOffset(), response.getLength(), prefixBytes, requestId)) {
+                return true;
+            }
+            logger.log(Level.WARNING, "Fail on response validation: ", getStringFromPacket(response));
+        }
+        return false;
+    }
+
     /**
      * Runs HelloClient realisation with given arguments
      *
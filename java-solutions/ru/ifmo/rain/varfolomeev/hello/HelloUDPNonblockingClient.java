@@ -1,5 +1,7 @@
 package ru.ifmo.rain.varfolomeev.hello;
 
+import ru.ifmo.rain.varfolomeev.hello.HelloLogger.Level;
+
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.*;
@@ -9,15 +11,51 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.*;
 import java.util.stream.IntStream;
 
-import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.BUFFER_SIZE;
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.*;
 
 public class HelloUDPNonblockingClient extends AbstractHelloClient {
+    private static final int MAX_OUTSTANDING_REQUESTS = 1 << 24;
+
+    private int windowSize = 1;
+    private int channelCount = 0;
+
+    /**
+     * Sets maximal count of requests awaiting response per channel.
+     * Responses are matched with requests by their content.
+     * Window larger than request count of a thread is reduced to it.
+     *
+     * @param windowSize positive window size, 1 by default
+     */
+    public void setWindowSize(int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Sets count of channels shared by all logical threads. Responses are dispatched
+     * to threads by thread and request numbers parsed from them.
+     *
+     * @param channelCount positive channel count, or 0 to open channel per thread (default)
+     */
+    public void setChannelCount(int channelCount) {
+        if (channelCount < 0) {
+            throw new IllegalArgumentException("Channel count can't be negative");
+        }
+        this.channelCount = channelCount;
+    }
+
     @Override
     public void run(String hostname, int port, String prefix, int threadCount, int requestCount) {
         validateParameters(prefix, threadCount, requestCount);
+        if (requestCount == 0) {
+            return;
+        }
 
         SocketAddress socketAddress = getSocketAddress(hostname, port);
 
@@ -28,101 +66,130 @@ public class HelloUDPNonblockingClient extends AbstractHelloClient {
             throw new RuntimeException("Can't create new selector", e);
         }
 
-        IntStream.range(0, threadCount)
-                .forEach(((ThrowingIntConsumer) i -> DatagramChannel.open()
+        int endpointCount = channelCount == 0 ? threadCount : Math.min(channelCount, threadCount);
+        // Memory of streams and request table is proportional to count of requests outstanding at once
+        int window = Math.max(1, Math.min(Math.min(windowSize, requestCount), MAX_OUTSTANDING_REQUESTS / threadCount));
+        ClientContext context = new ClientContext(selector, ByteBuffer.allocate(BUFFER_SIZE),
+                threadCount, requestCount, prefix, window);
+        List<Endpoint> endpoints = new ArrayList<>(endpointCount);
+        IntStream.range(0, endpointCount)
+                .forEach(((ThrowingIntConsumer) i -> endpoints.add(new Endpoint(DatagramChannel.open()
                         .bind(null)
                         .connect(socketAddress)
                         .configureBlocking(false)
-                        .register(selector, SelectionKey.OP_WRITE, new AbstractMap.SimpleEntry<>(i, 0)))
+                        .register(selector, SelectionKey.OP_WRITE))))
                         .toIntConsumer());
+        for (int i = 0; i < threadCount; i++) {
+            Endpoint endpoint = endpoints.get(i % endpointCount);
+            RequestStream stream = new RequestStream(i, context, endpoint, retransmissionCount::incrementAndGet);
+            endpoint.streams.add(stream);
+        }
 
-        process(new ClientContext(selector, ByteBuffer.allocate(BUFFER_SIZE), threadCount, requestCount, prefix));
+        process(context);
     }
 
     private void process(ClientContext context) {
         while (!context.isFinished()) {
             try {
-                if (context.getSelector().select(200) == 0) {
-                    for (SelectionKey key : context.getSelector().keys()) {
-                        if (key.interestOps() == SelectionKey.OP_READ) {
-                            key.interestOps(SelectionKey.OP_WRITE);
-                        }
-                    }
-                }
+                long timeout = context.getNextDeadline() - System.nanoTime();
+                context.getSelector().select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeout)));
             } catch (IOException e) {
-                System.out.println("Can't get keys of ready channels: " + e.getMessage());
+                logger.log(Level.ERROR, "Can't get keys of ready channels: ", e.getMessage());
             }
             for (final Iterator<SelectionKey> iterator = context.getSelector().selectedKeys().iterator(); iterator.hasNext(); ) {
                 final SelectionKey key = iterator.next();
                 try {
-                    if (key.isWritable()) {
+                    if (key.isValid() && key.isWritable()) {
                         send(key, context);
                     }
-                    if (key.isReadable()) {
+                    if (key.isValid() && key.isReadable()) {
                         receive(key, context);
                     }
                 } finally {
                     iterator.remove();
                 }
             }
+            for (RequestStream stream : context.expire(System.nanoTime())) {
+                stream.timer.onTimeout();
+                SelectionKey key = stream.endpoint.key;
+                if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            }
         }
         try {
             context.getSelector().close();
         } catch (IOException e) {
-            System.out.println("Can't close selector");
+            logger.log(Level.ERROR, "Can't close selector");
         }
+        logger.flush();
     }
 
-    @SuppressWarnings("unchecked")
     private void send(SelectionKey key, ClientContext context) {
         DatagramChannel datagramChannel = (DatagramChannel) key.channel();
-        Map.Entry<Integer, Integer> entry = (Map.Entry<Integer, Integer>) key.attachment();
-        String requestMessage = context.getPrefix() + entry.getKey() + '_' + entry.getValue();
-
-        context.getBuffer().put(requestMessage.getBytes(StandardCharsets.UTF_8)).flip();
-
-        try {
-            datagramChannel.send(context.getBuffer(), datagramChannel.getRemoteAddress());
-            System.out.println("Sending: " + requestMessage);
-            key.interestOps(SelectionKey.OP_READ);
-        } catch (IOException e) {
-            System.out.println("Channel can't get connected remote address: " + e.getMessage());
+        Endpoint endpoint = (Endpoint) key.attachment();
+        for (RequestStream stream : endpoint.streams) {
+            stream.fillWindow();
+            for (Integer requestNumber; (requestNumber = stream.pending.poll()) != null; ) {
+                if (stream.isAcknowledged(requestNumber)) {
+                    continue;
+                }
+                String requestMessage = stream.getRequestMessage(requestNumber);
+                context.getBuffer().clear();
+                context.getBuffer().put(requestMessage.getBytes(StandardCharsets.UTF_8)).flip();
+                try {
+                    if (datagramChannel.write(context.getBuffer()) == 0) {
+                        // Send buffer is full, the rest is sent on the next write readiness
+                        stream.pending.addFirst(requestNumber);
+                        return;
+                    }
+                    logger.log(Level.INFO, "Sending: ", requestMessage);
+                } catch (IOException e) {
+                    logger.log(Level.ERROR, "Failed to send request: ", e.getMessage());
+                }
+                stream.onSend(requestNumber, System.nanoTime());
+            }
         }
         context.getBuffer().clear();
+        key.interestOps(SelectionKey.OP_READ);
     }
 
-    @SuppressWarnings("unchecked")
     private void receive(SelectionKey key, ClientContext context) {
         DatagramChannel datagramChannel = (DatagramChannel) key.channel();
-        Map.Entry<Integer, Integer> entry = (Map.Entry<Integer, Integer>) key.attachment();
-        String requestMessage = context.getPrefix() + entry.getKey() + '_' + entry.getValue();
-
-        context.getBuffer().clear();
+        Endpoint endpoint = (Endpoint) key.attachment();
+        ByteBuffer buffer = context.getBuffer();
         try {
-            datagramChannel.receive(context.getBuffer());
-            context.getBuffer().flip();
-            String responseMessage = HelloUDPUtil.getStringFromBuffer(context.getBuffer());
-            if (responseMessage.contains(requestMessage)) {
-                System.out.println("Receiving: " + responseMessage);
-                int requestNumber = entry.getValue() + 1;
-                if (requestNumber == context.getRequestCount()) {
+            while (key.isValid()) {
+                buffer.clear();
+                if (datagramChannel.receive(buffer) == null) {
+                    break;
+                }
+                buffer.flip();
+                long requestId = context.findRequest(buffer, endpoint);
+                if (requestId < 0) {
+                    logger.log(Level.WARNING, "Fail on response validation: ", getStringFromBuffer(buffer));
+                    continue;
+                }
+                RequestStream stream = context.requests.remove(requestId);
+                stream.acknowledge(getRequestNumber(requestId), System.nanoTime());
+                if (logger.isEnabled(Level.INFO)) {
+                    logger.log(Level.INFO, "Receiving: ", getStringFromBuffer(buffer));
+                }
+                if (stream.isFinished()) {
                     context.countDown();
-                    key.cancel();
-                    datagramChannel.socket().close();
-                    datagramChannel.close();
-                } else {
-                    entry.setValue(requestNumber);
-                    key.interestOps(SelectionKey.OP_WRITE);
+                    if (--endpoint.unfinishedStreamCount == 0) {
+                        key.cancel();
+                        datagramChannel.socket().close();
+                        datagramChannel.close();
+                    }
+                } else if (stream.hasWindowSpace()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
                 }
-            } else {
-                System.out.println("Fail on response validation: " + responseMessage);
-                key.interestOps(SelectionKey.OP_WRITE);
             }
         } catch (IOException e) {
-            System.out.println("Failed: " + requestMessage);
-            key.interestOps(SelectionKey.OP_WRITE);
+            logger.log(Level.ERROR, "Failed to receive response: ", e.getMessage());
         }
-        context.getBuffer().clear();
+        buffer.clear();
     }
 
     private interface ThrowingIntConsumer {
@@ -139,20 +206,229 @@ public class HelloUDPNonblockingClient extends AbstractHelloClient {
         }
     }
 
+    /**
+     * Channel shared by one or more logical threads.
+     */
+    private static class Endpoint {
+        private final SelectionKey key;
+        private final List<RequestStream> streams = new ArrayList<>();
+        private int unfinishedStreamCount;
+
+        private Endpoint(SelectionKey key) {
+            this.key = key;
+            key.attach(this);
+        }
+    }
+
+    private static class RequestStream {
+        private final int threadNumber;
+        private final ClientContext context;
+        private final Endpoint endpoint;
+        private final RetransmissionTimer timer;
+        private final Runnable retransmissionListener;
+        private final boolean[] acknowledged;
+        private final boolean[] retransmitted;
+        private final long[] sendTimes;
+        private final long[] deadlines;
+        private final Deque<Integer> pending;
+        private int base;
+        private int next;
+
+        private RequestStream(int threadNumber, ClientContext context, Endpoint endpoint,
+                              Runnable retransmissionListener) {
+            this.threadNumber = threadNumber;
+            this.context = context;
+            this.endpoint = endpoint;
+            endpoint.unfinishedStreamCount++;
+            this.retransmissionListener = retransmissionListener;
+            timer = new RetransmissionTimer();
+            acknowledged = new boolean[context.getWindowSize()];
+            retransmitted = new boolean[context.getWindowSize()];
+            sendTimes = new long[context.getWindowSize()];
+            deadlines = new long[context.getWindowSize()];
+            pending = new ArrayDeque<>();
+            base = 0;
+            next = 0;
+        }
+
+        private String getRequestMessage(int requestNumber) {
+            return context.getPrefix() + threadNumber + '_' + requestNumber;
+        }
+
+        private boolean hasWindowSpace() {
+            return next < context.getRequestCount() && next < base + acknowledged.length;
+        }
+
+        private void fillWindow() {
+            while (hasWindowSpace()) {
+                acknowledged[next % acknowledged.length] = false;
+                retransmitted[next % retransmitted.length] = false;
+                context.requests.put(getRequestId(threadNumber, next), this);
+                pending.add(next++);
+            }
+        }
+
+        private boolean isAcknowledged(int requestNumber) {
+            return requestNumber < base || acknowledged[requestNumber % acknowledged.length];
+        }
+
+        private void onSend(int requestNumber, long now) {
+            sendTimes[requestNumber % sendTimes.length] = now;
+            long deadline = now + timer.getTimeout();
+            deadlines[requestNumber % deadlines.length] = deadline;
+            context.timeouts.add(new Timeout(deadline, this, requestNumber));
+        }
+
+        private void acknowledge(int requestNumber, long now) {
+            int index = requestNumber % acknowledged.length;
+            acknowledged[index] = true;
+            if (!retransmitted[index]) {
+                timer.onResponse(now - sendTimes[index]);
+            }
+            while (base < next && acknowledged[base % acknowledged.length]) {
+                base++;
+            }
+        }
+
+        private boolean isFinished() {
+            return base == context.getRequestCount();
+        }
+
+        /**
+         * Checks that timeout is the current one of unacknowledged request,
+         * timeouts of acknowledged or resent requests are left in the queue and skipped.
+         */
+        private boolean isCurrent(Timeout timeout) {
+            int index = timeout.requestNumber % deadlines.length;
+            return timeout.requestNumber >= base && timeout.requestNumber < next
+                    && !acknowledged[index] && deadlines[index] == timeout.deadline;
+        }
+
+        private void expire(int requestNumber) {
+            int index = requestNumber % deadlines.length;
+            deadlines[index] = Long.MAX_VALUE;
+            retransmitted[index] = true;
+            pending.add(requestNumber);
+            retransmissionListener.run();
+        }
+    }
+
+    private static class Timeout {
+        private final long deadline;
+        private final RequestStream stream;
+        private final int requestNumber;
+
+        private Timeout(long deadline, RequestStream stream, int requestNumber) {
+            this.deadline = deadline;
+            this.stream = stream;
+            this.requestNumber = requestNumber;
+        }
+    }
+
+    /**
+     * Open addressing hash table with linear probing from outstanding request ids to their streams.
+     */
+    private static class RequestTable {
+        private static final long EMPTY = -1;
+        private static final int MAX_CAPACITY = 1 << 30;
+
+        private final long[] keys;
+        private final RequestStream[] streams;
+        private final int shift;
+        private int size;
+
+        private RequestTable(long expectedSize) {
+            int capacity = (int) Math.min(MAX_CAPACITY, Long.highestOneBit(Math.max(2, 2 * expectedSize - 1)) << 1);
+            keys = new long[capacity];
+            streams = new RequestStream[capacity];
+            shift = Long.numberOfLeadingZeros(capacity - 1);
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private int getSlot(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+        }
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            for (int slot = getSlot(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        private void put(long key, RequestStream stream) {
+            int mask = keys.length - 1;
+            int slot = getSlot(key);
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY) {
+                // At least one slot is kept empty, so probing always stops
+                if (size == keys.length - 1) {
+                    throw new IllegalStateException("Too many outstanding requests");
+                }
+                size++;
+            }
+            keys[slot] = key;
+            streams[slot] = stream;
+        }
+
+        private RequestStream get(long key) {
+            int slot = find(key);
+            return slot < 0 ? null : streams[slot];
+        }
+
+        /**
+         * Removes entry and shifts back following entries of the probe sequence, so no tombstones are left.
+         */
+        private RequestStream remove(long key) {
+            int slot = find(key);
+            if (slot < 0) {
+                return null;
+            }
+            RequestStream removed = streams[slot];
+            int mask = keys.length - 1;
+            for (int hole = slot, next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int home = getSlot(keys[next]);
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    streams[hole] = streams[next];
+                    hole = next;
+                }
+                slot = hole;
+            }
+            keys[slot] = EMPTY;
+            streams[slot] = null;
+            size--;
+            return removed;
+        }
+    }
+
     private static class ClientContext {
         private final Selector selector;
         private int unfinishedBranchCount;
         private final ByteBuffer buffer;
         private final int requestCount;
         private final String prefix;
+        private final byte[] prefixBytes;
+        private final int windowSize;
+        private final RequestTable requests;
+        private final Queue<Timeout> timeouts =
+                new PriorityQueue<>(Comparator.comparingLong(timeout -> timeout.deadline));
 
-
-        private ClientContext(Selector selector, ByteBuffer buffer, int unfinishedBranchCount, int requestCount, String prefix) {
+        private ClientContext(Selector selector, ByteBuffer buffer, int unfinishedBranchCount,
+                              int requestCount, String prefix, int windowSize) {
             this.selector = selector;
             this.unfinishedBranchCount = unfinishedBranchCount;
             this.buffer = buffer;
             this.requestCount = requestCount;
             this.prefix = prefix;
+            prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+            this.windowSize = windowSize;
+            requests = new RequestTable((long) unfinishedBranchCount * windowSize);
         }
 
         private void countDown() {
@@ -163,6 +439,54 @@ public class HelloUDPNonblockingClient extends AbstractHelloClient {
             return unfinishedBranchCount == 0;
         }
 
+        private long getNextDeadline() {
+            while (!timeouts.isEmpty() && !timeouts.peek().stream.isCurrent(timeouts.peek())) {
+                timeouts.poll();
+            }
+            return timeouts.isEmpty() ? Long.MAX_VALUE : timeouts.peek().deadline;
+        }
+
+        /**
+         * Marks requests with passed deadlines for resending.
+         *
+         * @return streams having expired requests, each one once
+         */
+        private Set<RequestStream> expire(long now) {
+            Set<RequestStream> expired = null;
+            while (!timeouts.isEmpty() && timeouts.peek().deadline <= now) {
+                Timeout timeout = timeouts.poll();
+                if (timeout.stream.isCurrent(timeout)) {
+                    timeout.stream.expire(timeout.requestNumber);
+                    if (expired == null) {
+                        expired = new LinkedHashSet<>();
+                    }
+                    expired.add(timeout.stream);
+                }
+            }
+            return expired == null ? Set.of() : expired;
+        }
+
+        /**
+         * Finds outstanding request of given endpoint answered by response. Request is recognized
+         * by prefix followed by thread and request numbers, surrounding text is not checked.
+         *
+         * @return request id or -1 if there is no such request
+         */
+        private long findRequest(ByteBuffer response, Endpoint endpoint) {
+            byte[] data = response.array();
+            int to = response.limit();
+            for (int index = indexOf(data, 0, to, prefixBytes); index >= 0; index = indexOf(data, index + 1, to, prefixBytes)) {
+                long requestId = parseRequestId(data, index + prefixBytes.length, to);
+                if (requestId >= 0) {
+                    RequestStream stream = requests.get(requestId);
+                    if (stream != null && stream.endpoint == endpoint) {
+                        return requestId;
+                    }
+                }
+            }
+            return -1;
+        }
+
         private int getRequestCount() {
             return requestCount;
         }
@@ -178,6 +502,10 @@ public class HelloUDPNonblockingClient extends AbstractHelloClient {
         private String getPrefix() {
             return prefix;
         }
+
+        private int getWindowSize() {
+            return windowSize;
+        }
     }
 
     /**
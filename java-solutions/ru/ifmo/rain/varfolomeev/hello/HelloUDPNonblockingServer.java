@@ -1,45 +1,106 @@
 package ru.ifmo.rain.varfolomeev.hello;
 
+import ru.ifmo.rain.varfolomeev.hello.HelloLogger.Level;
+
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.BUFFER_SIZE;
 
 public class HelloUDPNonblockingServer extends AbstractHelloServer {
-    private Selector selector = null;
-    private DatagramChannel channel = null;
-    private ByteBuffer buffer = null;
+    private final List<Selector> selectors = new ArrayList<>();
+    private final List<DatagramChannel> channels = new ArrayList<>();
+    private ExecutorService workers = null;
+    private volatile boolean drainTimedOut = false;
 
+    /**
+     * Opens selector and buffer for every thread. If there are several threads and platform supports
+     * {@code SO_REUSEPORT}, every thread gets its own channel bound to {@code port} and kernel
+     * balances datagrams between them. Otherwise, the only channel is registered in all selectors.
+     */
     @Override
     public synchronized void startImplementation(int port, int threadCount) {
-        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        selectors.clear();
+        channels.clear();
         try {
-            selector = Selector.open();
+            boolean reusePort = false;
+            if (threadCount > 1) {
+                try (DatagramChannel probe = DatagramChannel.open()) {
+                    // Bound without SO_REUSEPORT, so it fails if port is in use, even by sockets sharing it
+                    probe.bind(new InetSocketAddress(port));
+                    port = ((InetSocketAddress) probe.getLocalAddress()).getPort();
+                    reusePort = probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+                }
+            }
+            DatagramChannel channel = openChannel(port, reusePort);
+            for (int i = 0; i < threadCount; i++) {
+                if (i > 0 && reusePort) {
+                    channel = openChannel(port, true);
+                }
+                Selector selector = Selector.open();
+                selectors.add(selector);
+                channel.register(selector, SelectionKey.OP_READ, new Batch(getBatchLimit()));
+            }
         } catch (IOException e) {
-            throw new RuntimeException("Can't create new selector", e);
+            closeAll();
+            throw new RuntimeException("Can't create reader channels", e);
         }
-        try {
-            channel = DatagramChannel.open();
-            channel
-                    .bind(new InetSocketAddress(port))
-                    .configureBlocking(false)
-                    .register(selector, SelectionKey.OP_READ);
-        } catch (IOException e) {
-            throw new RuntimeException("Can't create reader channel", e);
+        drainTimedOut = false;
+        workers = Executors.newFixedThreadPool(Math.max(1, threadCount - 1));
+    }
+
+    /**
+     * Buffers of one selector. They are slices of single direct buffer, so channel reads and writes
+     * them without intermediate copying, and each one starts with {@link #PREFIX} written once.
+     */
+    private static class Batch {
+        private final ByteBuffer[] buffers;
+        private final SocketAddress[] senders;
+
+        private Batch(int limit) {
+            buffers = new ByteBuffer[limit];
+            senders = new SocketAddress[limit];
+            int bufferSize = PREFIX_BYTES.length + BUFFER_SIZE;
+            ByteBuffer memory = ByteBuffer.allocateDirect(bufferSize * limit);
+            for (int i = 0; i < limit; i++) {
+                memory.limit(bufferSize * (i + 1)).position(bufferSize * i);
+                buffers[i] = memory.slice().put(PREFIX_BYTES);
+            }
+        }
+    }
+
+    private DatagramChannel openChannel(int port, boolean reusePort) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channels.add(channel);
+        if (reusePort) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
         }
+        channel.bind(new InetSocketAddress(port)).configureBlocking(false);
+        return channel;
     }
 
     void runServer() {
-        while (!Thread.interrupted()) {
+        for (Selector selector : selectors.subList(1, selectors.size())) {
+            workers.submit(() -> serve(selector));
+        }
+        serve(selectors.get(0));
+    }
+
+    private void serve(Selector selector) {
+        while (isAccepting() && !Thread.interrupted()) {
             try {
                 selector.select();
             } catch (IOException e) {
-                System.out.println("Can't get keys of ready channels: " + e.getMessage());
+                logger.log(Level.ERROR, "Can't get keys of ready channels: ", e.getMessage());
+            } catch (ClosedSelectorException e) {
+                return;
             }
             for (final Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
                 final SelectionKey key = iterator.next();
@@ -52,45 +113,135 @@ public class HelloUDPNonblockingServer extends AbstractHelloServer {
                 }
             }
         }
+        if (isDraining()) {
+            drain(selector);
+        }
     }
 
-    private void respond(SelectionKey key) {
+    /**
+     * Answers datagrams already buffered by channels of selector until none are left or deadline passes.
+     */
+    private void drain(Selector selector) {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                while (respond(key) == getBatchLimit()) {
+                    if (System.nanoTime() - getDrainDeadline() >= 0) {
+                        drainTimedOut = true;
+                        return;
+                    }
+                }
+            }
+        } catch (ClosedSelectorException ignored) {
+            drainTimedOut = true;
+        }
+    }
+
+    private int respond(SelectionKey key) {
         DatagramChannel datagramChannel = (DatagramChannel) key.channel();
-        buffer.put(PREFIX.getBytes(StandardCharsets.UTF_8));
+        Batch batch = (Batch) key.attachment();
+        int size = 0;
         try {
-            SocketAddress sender = datagramChannel.receive(buffer);
-            buffer.flip();
+            while (size < batch.buffers.length) {
+                ByteBuffer buffer = batch.buffers[size];
+                buffer.clear().position(PREFIX_BYTES.length);
+                SocketAddress sender = datagramChannel.receive(buffer);
+                if (sender == null) {
+                    break;
+                }
+                buffer.flip();
+                batch.senders[size++] = sender;
+            }
+        } catch (IOException e) {
+            if (isAccepting()) {
+                logger.log(Level.ERROR, "Failed to receive message: ", e.getMessage());
+            }
+        }
+        if (size == 0) {
+            return 0;
+        }
+        received.addAndGet(size);
+        recordBatch(size);
+        for (int i = 0; i < size; i++) {
             try {
-                datagramChannel.send(buffer, sender);
+                if (datagramChannel.send(batch.buffers[i], batch.senders[i]) > 0) {
+                    processed.incrementAndGet();
+                } else {
+                    // Send buffer is full, so the response is not sent
+                    dropped.incrementAndGet();
+                }
             } catch (IOException e) {
-                if (isStarted()) {
-                    System.out.println("Failed to sent message: " + e.getMessage());
+                dropped.incrementAndGet();
+                if (datagramChannel.isOpen()) {
+                    logger.log(Level.ERROR, "Failed to sent message: ", e.getMessage());
                 }
             }
-        } catch (IOException e) {
-            if (isStarted()) {
-                System.out.println("Failed to receive message: " + e.getMessage());
+            batch.senders[i] = null;
+        }
+        return size;
+    }
+
+    /**
+     * Reads datagrams left in channels buffers on close, so they are counted as received and abandoned.
+     * Channels are read after all serving threads stop only.
+     * Every datagram takes at least a byte of the buffer, so reading stops even if new ones keep arriving.
+     */
+    private void receiveAbandoned() {
+        selectors.get(0).wakeup();
+        if (!workers.isTerminated() || !joinReceiver()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        for (DatagramChannel channel : channels) {
+            try {
+                int limit = channel.getOption(StandardSocketOptions.SO_RCVBUF);
+                while (limit-- > 0 && channel.receive(buffer.clear()) != null) {
+                    received.incrementAndGet();
+                }
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    logger.log(Level.ERROR, "Failed to receive abandoned messages: ", e.getMessage());
+                }
             }
         }
-        buffer.clear();
     }
 
-    @Override
-    public void close() {
-        super.close();
-        try {
-            selector.close();
-        } catch (IOException e) {
-            System.out.println("Can't close selector");
+    private void closeAll() {
+        for (Selector selector : selectors) {
+            try {
+                selector.close();
+            } catch (IOException e) {
+                logger.log(Level.ERROR, "Can't close selector");
+            }
         }
-        try {
-            channel.socket().close();
-            channel.close();
-        } catch (IOException e) {
-            System.out.println("Can't close channels");
+        for (DatagramChannel channel : channels) {
+            try {
+                channel.socket().close();
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.ERROR, "Can't close channels");
+            }
         }
     }
 
+    /**
+     * Wakes up selectors, so every thread answers what its channels have buffered and finishes.
+     */
+    @Override
+    boolean drain(long deadline) throws InterruptedException {
+        for (Selector selector : selectors) {
+            selector.wakeup();
+        }
+        workers.shutdown();
+        return awaitReceiver(deadline) && awaitTermination(workers, deadline) && !drainTimedOut;
+    }
+
+    @Override
+    void closeImplementation() {
+        shutdownAndJoin(workers);
+        receiveAbandoned();
+        closeAll();
+    }
+
     /**
      * Starts HelloUDPServer with given arguments
      *
@@ -1,18 +1,169 @@
 package ru.ifmo.rain.varfolomeev.hello;
 
+import ru.ifmo.rain.varfolomeev.hello.HelloLogger.Level;
+
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.SocketException;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-
-import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.getStringFromPacket;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class HelloUDPServer extends AbstractHelloServer {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int POLL_TIMEOUT = 100;
+    private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
     private DatagramSocket datagramSocket = null;
     private ExecutorService executorService = null;
+    private BlockingQueue<DatagramPacket> freePackets = null;
+    private BlockingQueue<DatagramPacket> requests = null;
+    private int queueCapacity = 0;
+    private int packetCount = 0;
+    private int allocatedPackets = 0;
+    private int bufferSize = 0;
+    private DropPolicy dropPolicy = DropPolicy.DROP_NEWEST;
+    private boolean deduplication = false;
+    private volatile boolean receiverStopped = false;
+    private final Map<RequestKey, RequestKey> queuedRequests = new ConcurrentHashMap<>();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    /**
+     * Policy of handling received datagram when request queue is full.
+     */
+    public enum DropPolicy {
+        /**
+         * Received datagram is dropped.
+         */
+        DROP_NEWEST,
+        /**
+         * The oldest queued datagram is dropped.
+         */
+        DROP_OLDEST,
+        /**
+         * Received datagram is processed by the receiving thread.
+         */
+        CALLER_RUNS
+    }
+
+    /**
+     * Snapshot of server counters since the last start, including request queue state.
+     */
+    public static class Statistics extends AbstractHelloServer.Statistics {
+        private final long deduplicated;
+        private final int queueDepth;
+        private final int queueCapacity;
+
+        private Statistics(long received, long processed, long dropped, long deduplicated,
+                           int queueDepth, int queueCapacity) {
+            super(received, processed, dropped);
+            this.deduplicated = deduplicated;
+            this.queueDepth = queueDepth;
+            this.queueCapacity = queueCapacity;
+        }
+
+        public long getDeduplicated() {
+            return deduplicated;
+        }
+
+        /**
+         * Returns count of received requests neither answered, nor dropped or deduplicated.
+         * After the server is closed, it is count of requests abandoned on shutdown.
+         *
+         * @return in-flight requests count
+         */
+        @Override
+        public long getInFlight() {
+            return super.getInFlight() - deduplicated;
+        }
+
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("received=%d, processed=%d, dropped=%d, deduplicated=%d, in-flight=%d, queue=%d/%d",
+                    getReceived(), getProcessed(), getDropped(), deduplicated, getInFlight(),
+                    queueDepth, queueCapacity);
+        }
+    }
+
+    /**
+     * Sets capacity of received requests queue. Should be called before {@link #start(int, int)}.
+     *
+     * @param queueCapacity positive capacity, by default 1000 or one batch per thread if it is more
+     */
+    public synchronized void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive");
+        }
+        if (isStarted()) {
+            throw new IllegalStateException("The server is already started");
+        }
+        this.queueCapacity = queueCapacity;
+    }
 
+    /**
+     * Sets policy of handling datagrams received when request queue is full.
+     * Should be called before {@link #start(int, int)}.
+     *
+     * @param dropPolicy policy, {@link DropPolicy#DROP_NEWEST} by default
+     */
+    public synchronized void setDropPolicy(DropPolicy dropPolicy) {
+        if (dropPolicy == null) {
+            throw new IllegalArgumentException("Drop policy can't be 'null'");
+        }
+        if (isStarted()) {
+            throw new IllegalStateException("The server is already started");
+        }
+        this.dropPolicy = dropPolicy;
+    }
+
+    /**
+     * Enables deduplication of queued requests. Datagram with the same sender and content
+     * as one still waiting in request queue is dropped, as the queued one is going to be answered.
+     * Nothing is remembered after request is taken from the queue, so duplicates arriving later
+     * are answered again, since the first response could be lost.
+     * Should be called before {@link #start(int, int)}.
+     *
+     * @param deduplication {@code true} to drop duplicates of queued requests, {@code false} by default
+     */
+    public synchronized void setDeduplication(boolean deduplication) {
+        if (isStarted()) {
+            throw new IllegalStateException("The server is already started");
+        }
+        this.deduplication = deduplication;
+    }
+
+    /**
+     * Returns snapshot of received, processed, dropped and deduplicated datagrams counters and request queue depth.
+     * Datagrams which could not be sent are counted as dropped.
+     *
+     * @return statistics snapshot
+     */
+    @Override
+    public Statistics getStatistics() {
+        BlockingQueue<DatagramPacket> queue = requests;
+        return new Statistics(received.get(), processed.get(), dropped.get(), deduplicated.get(),
+                queue == null ? 0 : queue.size(), queue == null ? 0 : queue.size() + queue.remainingCapacity());
+    }
+
+    /**
+     * Creates socket and bounded pool of packets. Every packet starts with {@link #PREFIX} bytes
+     * and request is received right after them, so response is built in place.
+     * Pool holds enough packets for full request queue, batches of all threads and receiving thread.
+     * Packets are allocated by receiving thread when pool is empty, until the limit is reached.
+     */
     @Override
     public synchronized void startImplementation(int port, int threadCount) {
         try {
@@ -21,44 +172,206 @@ public class HelloUDPServer extends AbstractHelloServer {
             throw new RuntimeException("Can't create DatagramSocket instance", e);
         }
 
-        executorService = new ThreadPoolExecutor(threadCount, threadCount, 500, TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<>(1000), new ThreadPoolExecutor.DiscardPolicy());
-    }
+        deduplicated.set(0);
+        queuedRequests.clear();
+        receiverStopped = false;
+        int capacity = queueCapacity > 0
+                ? queueCapacity
+                : Math.max(DEFAULT_QUEUE_CAPACITY, threadCount * getBatchLimit());
+        packetCount = capacity + threadCount * getBatchLimit() + 1;
+        allocatedPackets = 0;
+        freePackets = new ArrayBlockingQueue<>(packetCount);
+        requests = new ArrayBlockingQueue<>(capacity);
+        try {
+            datagramSocket.setSoTimeout(POLL_TIMEOUT);
+            bufferSize = PREFIX_BYTES.length + Math.min(datagramSocket.getReceiveBufferSize(), MAX_DATAGRAM_SIZE);
+        } catch (SocketException e) {
+            datagramSocket.close();
+            throw new RuntimeException("Can't get receive buffer size", e);
+        }
 
+        executorService = Executors.newFixedThreadPool(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            executorService.submit(this::work);
+        }
+    }
 
+    /**
+     * Receives requests while the server accepts them. Receiving is done with timeout,
+     * so it stops soon after {@link #closeGracefully(long, TimeUnit)} even if no datagrams arrive.
+     */
     void runServer() {
-        while (!datagramSocket.isClosed()) {
+        while (isAccepting()) {
+            DatagramPacket packet = freePackets.poll();
+            if (packet == null) {
+                try {
+                    packet = allocatedPackets < packetCount ? newPacket() : freePackets.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
             try {
-                DatagramPacket request = new DatagramPacket(new byte[datagramSocket.getReceiveBufferSize()],
-                        datagramSocket.getReceiveBufferSize());
-                datagramSocket.receive(request);
-                executorService.submit(() -> respond(request));
+                byte[] buffer = packet.getData();
+                packet.setData(buffer, PREFIX_BYTES.length, buffer.length - PREFIX_BYTES.length);
+                datagramSocket.receive(packet);
+                received.incrementAndGet();
+                enqueue(packet);
+            } catch (SocketTimeoutException e) {
+                freePackets.add(packet);
             } catch (IOException e) {
-                if (isStarted()) {
-                    System.out.println("Failed to receive packet: " + e.getMessage());
+                freePackets.add(packet);
+                if (isAccepting()) {
+                    logger.log(Level.ERROR, "Failed to receive packet: ", e.getMessage());
                 }
             }
         }
     }
 
-    private void respond(DatagramPacket request) {
-        String requestMessage = getStringFromPacket(request);
-        byte[] responseData = (PREFIX + requestMessage).getBytes(StandardCharsets.UTF_8);
-        DatagramPacket response = new DatagramPacket(responseData, responseData.length, request.getSocketAddress());
+    private DatagramPacket newPacket() {
+        allocatedPackets++;
+        byte[] buffer = new byte[bufferSize];
+        System.arraycopy(PREFIX_BYTES, 0, buffer, 0, PREFIX_BYTES.length);
+        return new DatagramPacket(buffer, bufferSize);
+    }
+
+    private void enqueue(DatagramPacket packet) {
+        if (deduplication) {
+            RequestKey key = new RequestKey(packet);
+            if (queuedRequests.putIfAbsent(key, key) != null) {
+                deduplicated.incrementAndGet();
+                freePackets.add(packet);
+                return;
+            }
+        }
+        if (requests.offer(packet)) {
+            return;
+        }
+        switch (dropPolicy) {
+            case DROP_NEWEST:
+                dropped.incrementAndGet();
+                dequeued(packet);
+                freePackets.add(packet);
+                break;
+            case DROP_OLDEST:
+                while (!requests.offer(packet)) {
+                    DatagramPacket oldest = requests.poll();
+                    if (oldest != null) {
+                        dropped.incrementAndGet();
+                        dequeued(oldest);
+                        freePackets.add(oldest);
+                    }
+                }
+                break;
+            case CALLER_RUNS:
+                respond(packet);
+                freePackets.add(packet);
+                break;
+        }
+    }
+
+    private void work() {
+        List<DatagramPacket> batch = new ArrayList<>(getBatchLimit());
         try {
-            datagramSocket.send(response);
+            while (!Thread.interrupted()) {
+                DatagramPacket request = receiverStopped
+                        ? requests.poll()
+                        : requests.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if (request == null) {
+                    if (receiverStopped) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(request);
+                requests.drainTo(batch, getBatchLimit() - 1);
+                recordBatch(batch.size());
+                for (DatagramPacket packet : batch) {
+                    respond(packet);
+                }
+                freePackets.addAll(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void dequeued(DatagramPacket packet) {
+        if (deduplication) {
+            queuedRequests.remove(new RequestKey(packet));
+        }
+    }
+
+    private void respond(DatagramPacket packet) {
+        dequeued(packet);
+        packet.setData(packet.getData(), 0, PREFIX_BYTES.length + packet.getLength());
+        try {
+            datagramSocket.send(packet);
+            processed.incrementAndGet();
         } catch (IOException e) {
-            if (isStarted()) {
-                System.out.println("Failed to send packet: " + e.getMessage());
+            dropped.incrementAndGet();
+            if (!datagramSocket.isClosed()) {
+                logger.log(Level.ERROR, "Failed to send packet: ", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Sender and content of received request. Refers to packet data, so it is valid
+     * only until the packet is answered.
+     */
+    private static class RequestKey {
+        private final DatagramPacket packet;
+        private final int hash;
+
+        private RequestKey(DatagramPacket packet) {
+            this.packet = packet;
+            int hash = packet.getSocketAddress().hashCode();
+            byte[] data = packet.getData();
+            for (int i = packet.getOffset(), end = i + packet.getLength(); i < end; i++) {
+                hash = 31 * hash + data[i];
             }
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RequestKey)) {
+                return false;
+            }
+            DatagramPacket other = ((RequestKey) o).packet;
+            return hash == ((RequestKey) o).hash
+                    && packet.getSocketAddress().equals(other.getSocketAddress())
+                    && Arrays.equals(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength(),
+                    other.getData(), other.getOffset(), other.getOffset() + other.getLength());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Waits for receiving thread to stop, then lets workers answer queued requests and finish.
+     */
+    @Override
+    boolean drain(long deadline) throws InterruptedException {
+        if (!awaitReceiver(deadline)) {
+            return false;
         }
+        receiverStopped = true;
+        executorService.shutdown();
+        return awaitTermination(executorService, deadline);
     }
 
     @Override
-    public void close() {
+    void closeImplementation() {
+        receiveAbandoned(datagramSocket);
         datagramSocket.close();
-        executorService.shutdownNow();
-        super.close();
+        shutdownAndJoin(executorService);
     }
 
     /**
@@ -1,11 +1,15 @@
 package ru.ifmo.rain.varfolomeev.hello;
 
+import java.lang.reflect.Method;
 import java.net.DatagramPacket;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 class HelloUDPUtil {
     static final int BUFFER_SIZE = 512;
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
 
     static int getIntArgument(String argumentName, String stringArgument) throws NumberFormatException {
         try {
@@ -17,6 +21,110 @@ class HelloUDPUtil {
         }
     }
 
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks if running JVM supports virtual threads, that is, it is JDK 21 or newer.
+     */
+    static boolean hasVirtualThreads() {
+        return VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    /**
+     * Creates executor starting new virtual thread for each task. When virtual threads
+     * are not supported by the running JVM, falls back to fixed pool of platform threads.
+     *
+     * @param fallbackThreadCount size of the fallback pool
+     */
+    static ExecutorService newThreadPerTaskExecutor(int fallbackThreadCount) {
+        if (hasVirtualThreads()) {
+            try {
+                return (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+            } catch (ReflectiveOperationException ignored) {
+                // Fall back to platform threads
+            }
+        }
+        return Executors.newFixedThreadPool(fallbackThreadCount);
+    }
+
+    static long getRequestId(int threadNumber, int requestNumber) {
+        return (long) threadNumber << 32 | requestNumber;
+    }
+
+    static int getRequestNumber(long requestId) {
+        return (int) requestId;
+    }
+
+    /**
+     * Checks that response contains request with given id, that is, request prefix followed
+     * by thread and request numbers. Works on UTF-8 bytes, so surrounding localized text is skipped
+     * without decoding: ASCII bytes never occur inside multibyte sequences.
+     */
+    static boolean matches(byte[] data, int offset, int length, byte[] prefix, long requestId) {
+        int to = offset + length;
+        for (int index = indexOf(data, offset, to, prefix); index >= 0; index = indexOf(data, index + 1, to, prefix)) {
+            if (parseRequestId(data, index + prefix.length, to) == requestId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+        search:
+        for (int index = from; index <= to - pattern.length; index++) {
+            for (int i = 0; i < pattern.length; i++) {
+                if (data[index + i] != pattern[i]) {
+                    continue search;
+                }
+            }
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses {@code thread_request} numbers starting at given position. Request number
+     * must not be followed by another digit.
+     *
+     * @return request id made by {@link #getRequestId(int, int)} or -1 if there are no such numbers
+     */
+    static long parseRequestId(byte[] data, int position, int to) {
+        int index = position;
+        long threadNumber = 0;
+        for (; index < to && isDigit(data[index]); index++) {
+            threadNumber = threadNumber * 10 + data[index] - '0';
+            if (threadNumber > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        if (index == position || index == to || data[index] != '_') {
+            return -1;
+        }
+        int requestStart = ++index;
+        long requestNumber = 0;
+        for (; index < to && isDigit(data[index]); index++) {
+            requestNumber = requestNumber * 10 + data[index] - '0';
+            if (requestNumber > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        if (index == requestStart) {
+            return -1;
+        }
+        return getRequestId((int) threadNumber, (int) requestNumber);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
     static String getStringFromBuffer(ByteBuffer buffer) {
         return new String(buffer.array(), buffer.position(), buffer.limit(), StandardCharsets.UTF_8);
     }
@@ -0,0 +1,38 @@
+package ru.ifmo.rain.varfolomeev.hello;
+
+import java.net.DatagramSocket;
+import java.util.concurrent.ExecutorService;
+
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.BUFFER_SIZE;
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.newThreadPerTaskExecutor;
+
+/**
+ * Blocking client running every logical client thread on its own virtual thread,
+ * so count of concurrent streams is not limited by platform threads.
+ * Virtual threads are used on JDK 21 and newer only. On older JVMs streams are run by
+ * at most {@value #MAX_PLATFORM_THREADS} platform threads, so some of them wait for others to finish.
+ * Responses are received into buffers of {@link HelloUDPUtil#BUFFER_SIZE} bytes
+ * to keep memory per stream small.
+ */
+public class HelloUDPVirtualClient extends HelloUDPClient {
+    private static final int MAX_PLATFORM_THREADS = 256;
+
+    @Override
+    ExecutorService newExecutor(int threadCount) {
+        return newThreadPerTaskExecutor(Math.min(threadCount, MAX_PLATFORM_THREADS));
+    }
+
+    @Override
+    int getResponseBufferSize(DatagramSocket datagramSocket) {
+        return BUFFER_SIZE;
+    }
+
+    /**
+     * Runs HelloClient realisation with given arguments
+     *
+     * @param args {@link #run(String, int, String, int, int)} arguments
+     */
+    public static void main(String[] args) {
+        main(new HelloUDPVirtualClient(), args);
+    }
+}
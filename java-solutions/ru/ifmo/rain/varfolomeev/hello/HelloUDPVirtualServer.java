@@ -0,0 +1,146 @@
+package ru.ifmo.rain.varfolomeev.hello;
+
+import ru.ifmo.rain.varfolomeev.hello.HelloLogger.Level;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.hasVirtualThreads;
+import static ru.ifmo.rain.varfolomeev.hello.HelloUDPUtil.newThreadPerTaskExecutor;
+
+/**
+ * Blocking server handling every request on its own virtual thread,
+ * concurrency is bounded by {@link #setMaxInFlight(int)}.
+ * Virtual threads are used on JDK 21 and newer only. On older JVMs requests are handled by
+ * fixed pool of platform threads of size passed to {@link #start(int, int)},
+ * and in-flight limit is reduced to the pool size.
+ */
+public class HelloUDPVirtualServer extends AbstractHelloServer {
+    private static final int MAX_DATAGRAM_SIZE = 65507;
+    private static final int POLL_TIMEOUT = 100;
+
+    private DatagramSocket datagramSocket = null;
+    private ExecutorService executorService = null;
+    private Semaphore inFlight = null;
+    private int permits = 0;
+    private int maxInFlight = 10_000;
+
+    /**
+     * Sets maximal count of requests handled concurrently. When limit is reached,
+     * receiving is paused and datagrams are buffered by the socket.
+     * Should be called before {@link #start(int, int)}.
+     *
+     * @param maxInFlight positive limit, 10000 by default
+     */
+    public synchronized void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Max in-flight count must be positive");
+        }
+        if (isStarted()) {
+            throw new IllegalStateException("The server is already started");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+    @Override
+    synchronized void startImplementation(int port, int threadCount) {
+        try {
+            datagramSocket = new DatagramSocket(port);
+            datagramSocket.setSoTimeout(POLL_TIMEOUT);
+        } catch (SocketException e) {
+            throw new RuntimeException("Can't create DatagramSocket instance", e);
+        }
+        permits = hasVirtualThreads() ? maxInFlight : Math.min(maxInFlight, threadCount);
+        inFlight = new Semaphore(permits);
+        executorService = newThreadPerTaskExecutor(threadCount);
+    }
+
+    /**
+     * Receives requests into single buffer and passes copy of each one,
+     * already prefixed with {@link #PREFIX}, to a new thread.
+     */
+    @Override
+    void runServer() {
+        byte[] buffer;
+        try {
+            buffer = new byte[Math.min(datagramSocket.getReceiveBufferSize(), MAX_DATAGRAM_SIZE)];
+        } catch (SocketException e) {
+            logger.log(Level.ERROR, "Can't get receive buffer size: ", e.getMessage());
+            return;
+        }
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (isAccepting()) {
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                packet.setData(buffer);
+                datagramSocket.receive(packet);
+                received.incrementAndGet();
+                byte[] response = new byte[PREFIX_BYTES.length + packet.getLength()];
+                System.arraycopy(PREFIX_BYTES, 0, response, 0, PREFIX_BYTES.length);
+                System.arraycopy(buffer, 0, response, PREFIX_BYTES.length, packet.getLength());
+                SocketAddress address = packet.getSocketAddress();
+                executorService.execute(() -> respond(new DatagramPacket(response, response.length, address)));
+            } catch (SocketTimeoutException e) {
+                inFlight.release();
+            } catch (IOException e) {
+                inFlight.release();
+                if (isAccepting()) {
+                    logger.log(Level.ERROR, "Failed to receive packet: ", e.getMessage());
+                }
+            } catch (RuntimeException e) {
+                inFlight.release();
+                return;
+            }
+        }
+    }
+
+    private void respond(DatagramPacket packet) {
+        try {
+            datagramSocket.send(packet);
+            processed.incrementAndGet();
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            if (!datagramSocket.isClosed()) {
+                logger.log(Level.ERROR, "Failed to send packet: ", e.getMessage());
+            }
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Waits for receiving thread to stop and for all handling threads to return their permits.
+     */
+    @Override
+    boolean drain(long deadline) throws InterruptedException {
+        return awaitReceiver(deadline)
+                && inFlight.tryAcquire(permits, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    void closeImplementation() {
+        receiveAbandoned(datagramSocket);
+        datagramSocket.close();
+        shutdownAndJoin(executorService);
+    }
+
+    /**
+     * Starts HelloUDPVirtualServer with given arguments
+     *
+     * @param args {@link #start(int, int)} arguments
+     */
+    public static void main(String[] args) {
+        main(new HelloUDPVirtualServer(), args);
+    }
+}
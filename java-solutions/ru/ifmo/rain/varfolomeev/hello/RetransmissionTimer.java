@@ -0,0 +1,48 @@
+package ru.ifmo.rain.varfolomeev.hello;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retransmission timeout estimator of one channel. Smoothed round trip time and its variation
+ * are calculated as in TCP (RFC 6298). Timeout is doubled after every expiration and randomized
+ * by up to a quarter, so channels which lost responses together don't retransmit together.
+ * Timeout is at least 50 ms, so scheduling delays on fast links are not taken for losses.
+ */
+class RetransmissionTimer {
+    private static final long INITIAL_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final long MIN_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long MAX_TIMEOUT = TimeUnit.SECONDS.toNanos(3);
+    private static final long CLOCK_GRANULARITY = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_BACKOFF = 6;
+
+    private boolean measured = false;
+    private long smoothedRtt = 0;
+    private long rttVariation = 0;
+    private int backoff = 0;
+
+    /**
+     * Updates estimation with round trip time of request which was sent once.
+     */
+    void onResponse(long rtt) {
+        if (measured) {
+            rttVariation = (3 * rttVariation + Math.abs(smoothedRtt - rtt)) / 4;
+            smoothedRtt = (7 * smoothedRtt + rtt) / 8;
+        } else {
+            smoothedRtt = rtt;
+            rttVariation = rtt / 2;
+            measured = true;
+        }
+        backoff = 0;
+    }
+
+    void onTimeout() {
+        backoff = Math.min(backoff + 1, MAX_BACKOFF);
+    }
+
+    long getTimeout() {
+        long timeout = measured ? smoothedRtt + Math.max(CLOCK_GRANULARITY, 4 * rttVariation) : INITIAL_TIMEOUT;
+        timeout = Math.min(MAX_TIMEOUT, Math.max(MIN_TIMEOUT, timeout) << backoff);
+        return timeout + ThreadLocalRandom.current().nextLong(timeout / 4 + 1);
+    }
+}
@@ -0,0 +1,233 @@
+package ru.ifmo.rain.varfolomeev.hello.tests;
+
+import info.kgeorgiy.java.advanced.hello.HelloServer;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+import ru.ifmo.rain.varfolomeev.hello.AbstractHelloServer;
+import ru.ifmo.rain.varfolomeev.hello.HelloLogger;
+import ru.ifmo.rain.varfolomeev.hello.HelloUDPClient;
+import ru.ifmo.rain.varfolomeev.hello.HelloUDPNonblockingServer;
+import ru.ifmo.rain.varfolomeev.hello.HelloUDPServer;
+import ru.ifmo.rain.varfolomeev.hello.HelloUDPVirtualServer;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class HelloUDPServerTests {
+    private static final int PORT = 28888;
+
+    private static final int BURST_SIZE = 200;
+
+    private static HelloUDPServer blockingServer() {
+        HelloUDPServer server = new HelloUDPServer();
+        server.setLogger(HelloLogger.NONE);
+        return server;
+    }
+
+    private static HelloUDPNonblockingServer nonblockingServer() {
+        HelloUDPNonblockingServer server = new HelloUDPNonblockingServer();
+        server.setLogger(HelloLogger.NONE);
+        return server;
+    }
+
+    private static HelloUDPServer deduplicatingServer() {
+        HelloUDPServer server = blockingServer();
+        server.setDeduplication(true);
+        server.start(PORT, 1);
+        return server;
+    }
+
+    private static void send(DatagramSocket socket, String request) throws IOException {
+        byte[] data = request.getBytes(StandardCharsets.UTF_8);
+        socket.send(new DatagramPacket(data, data.length, new InetSocketAddress("localhost", PORT)));
+    }
+
+    private static int receiveResponses(DatagramSocket socket, String request, int limit) throws IOException {
+        socket.setSoTimeout(1000);
+        DatagramPacket response = new DatagramPacket(new byte[256], 256);
+        int responseCount = 0;
+        try {
+            while (responseCount < limit) {
+                socket.receive(response);
+                assertEquals("Hello, " + request, new String(response.getData(), response.getOffset(),
+                        response.getLength(), StandardCharsets.UTF_8));
+                responseCount++;
+            }
+        } catch (SocketTimeoutException ignored) {
+        }
+        return responseCount;
+    }
+
+    private static void checkAbandonedAreCounted(AbstractHelloServer server) throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            server.setLogger(HelloLogger.NONE);
+            server.start(PORT, 1);
+            for (int i = 0; i < BURST_SIZE; i++) {
+                send(socket, "abandoned_" + i);
+            }
+            server.closeGracefully(0, TimeUnit.MILLISECONDS);
+            AbstractHelloServer.Statistics statistics = server.getStatistics();
+            assertEquals(statistics.toString(), BURST_SIZE, statistics.getReceived());
+            assertTrue(statistics.toString(), statistics.getInFlight() >= 0);
+        }
+    }
+
+    private static void runClient(int threadCount, int requestCount) {
+        Set<String> responses = ConcurrentHashMap.newKeySet();
+        HelloUDPClient client = new HelloUDPClient();
+        client.setLogger(new HelloLogger() {
+            @Override
+            public boolean isEnabled(Level level) {
+                return level == Level.INFO;
+            }
+
+            @Override
+            public void log(Level level, String message, Object argument) {
+                if ("Receiving: ".equals(message)) {
+                    responses.add(String.valueOf(argument));
+                }
+            }
+        });
+        client.run("localhost", PORT, "test_", threadCount, requestCount);
+        for (int i = 0; i < threadCount; i++) {
+            for (int j = 0; j < requestCount; j++) {
+                String response = "Hello, test_" + i + "_" + j;
+                assertTrue("No response: " + response, responses.contains(response));
+            }
+        }
+    }
+
+    private static void checkPortIsTaken(int threadCount) {
+        try (HelloServer server = nonblockingServer(); HelloServer other = nonblockingServer()) {
+            server.start(PORT, threadCount);
+            try {
+                other.start(PORT, threadCount);
+                fail("Second server started on the same port");
+            } catch (RuntimeException ignored) {
+            }
+            try {
+                new DatagramSocket(PORT).close();
+                fail("Socket bound to port of running server");
+            } catch (SocketException ignored) {
+            }
+            runClient(threadCount, 10);
+        }
+    }
+
+    @Test
+    public void test01_singleThreadNonblockingServerOwnsPort() {
+        checkPortIsTaken(1);
+    }
+
+    @Test
+    public void test02_multiThreadNonblockingServerOwnsPort() {
+        checkPortIsTaken(4);
+    }
+
+    @Test
+    public void test03_defaultQueueAbsorbsBurst() throws IOException {
+        try (HelloUDPServer server = blockingServer(); DatagramSocket socket = new DatagramSocket()) {
+            server.start(PORT, 1);
+            socket.setSoTimeout(1000);
+            SocketAddress address = new InetSocketAddress("localhost", PORT);
+            for (int i = 0; i < BURST_SIZE; i++) {
+                byte[] request = ("burst_" + i).getBytes(StandardCharsets.UTF_8);
+                socket.send(new DatagramPacket(request, request.length, address));
+            }
+            DatagramPacket response = new DatagramPacket(new byte[256], 256);
+            int responseCount = 0;
+            try {
+                while (responseCount < BURST_SIZE) {
+                    socket.receive(response);
+                    responseCount++;
+                }
+            } catch (SocketTimeoutException ignored) {
+            }
+            HelloUDPServer.Statistics statistics = server.getStatistics();
+            assertEquals(0, statistics.getDropped());
+            assertEquals(statistics.getReceived(), statistics.getProcessed());
+            assertEquals(statistics.getReceived(), responseCount);
+        }
+    }
+
+    @Test
+    public void test04_defaultQueueServesManyClientThreads() {
+        try (HelloUDPServer server = blockingServer()) {
+            server.start(PORT, 1);
+            HelloUDPClient client = new HelloUDPClient();
+            client.setLogger(HelloLogger.NONE);
+            client.run("localhost", PORT, "test_", 32, 20);
+            assertEquals(0, server.getStatistics().getDropped());
+        }
+    }
+
+    @Test
+    public void test05_duplicatesOfQueuedRequestAreDropped() throws IOException {
+        try (HelloUDPServer server = deduplicatingServer(); DatagramSocket socket = new DatagramSocket()) {
+            for (int i = 0; i < BURST_SIZE; i++) {
+                send(socket, "duplicate");
+            }
+            int responseCount = receiveResponses(socket, "duplicate", BURST_SIZE);
+            HelloUDPServer.Statistics statistics = server.getStatistics();
+            assertEquals(BURST_SIZE, statistics.getReceived());
+            assertTrue("No duplicates dropped: " + statistics, statistics.getDeduplicated() > 0);
+            assertEquals(0, statistics.getDropped());
+            assertEquals(statistics.getProcessed(), responseCount);
+            assertEquals(statistics.getReceived(), statistics.getProcessed() + statistics.getDeduplicated());
+        }
+    }
+
+    @Test
+    public void test06_duplicatesOfAnsweredRequestAreAnswered() throws IOException {
+        try (HelloUDPServer server = deduplicatingServer(); DatagramSocket socket = new DatagramSocket()) {
+            for (int i = 0; i < 10; i++) {
+                send(socket, "duplicate");
+                assertEquals(1, receiveResponses(socket, "duplicate", 1));
+            }
+            HelloUDPServer.Statistics statistics = server.getStatistics();
+            assertEquals(0, statistics.getDeduplicated());
+            assertEquals(10, statistics.getReceived());
+        }
+    }
+
+    @Test
+    public void test07_sameRequestsOfDifferentSendersAreAnswered() throws IOException {
+        try (HelloUDPServer server = deduplicatingServer();
+             DatagramSocket first = new DatagramSocket(); DatagramSocket second = new DatagramSocket()) {
+            send(first, "duplicate");
+            send(second, "duplicate");
+            assertEquals(1, receiveResponses(first, "duplicate", 1));
+            assertEquals(1, receiveResponses(second, "duplicate", 1));
+            assertEquals(0, server.getStatistics().getDeduplicated());
+        }
+    }
+
+    @Test
+    public void test08_abandonedRequestsAreCounted() throws IOException {
+        checkAbandonedAreCounted(new HelloUDPServer());
+        checkAbandonedAreCounted(new HelloUDPNonblockingServer());
+        HelloUDPVirtualServer server = new HelloUDPVirtualServer();
+        server.setMaxInFlight(1);
+        checkAbandonedAreCounted(server);
+    }
+
+    public static void main(String[] args) {
+        Result result = new JUnitCore().run(HelloUDPServerTests.class);
+        System.out.println(String.format("%n==========================%nFailures: %d, Success: %d, Skipped: %d%n",
+                result.getFailureCount(), result.getRunCount() - result.getFailureCount(), result.getIgnoreCount()));
+        System.exit(result.wasSuccessful() ? 0 : 1);
+    }
+}
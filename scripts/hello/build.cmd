@@ -0,0 +1,8 @@
+set script_folder=%~dp0
+set src_folder=%script_folder%..\..\java-solutions
+set lib_folder=%src_folder%\..\..\java-advanced-2020\lib
+set artifacts_folder=%src_folder%\..\..\java-advanced-2020\artifacts
+set hello_folder=%src_folder%\ru\ifmo\rain\varfolomeev\hello\
+set java_sources=%hello_folder%*.java %hello_folder%tests\*.java
+
+javac -d _build -cp %lib_folder%\*;%artifacts_folder%\* %java_sources%
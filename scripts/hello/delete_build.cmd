@@ -0,0 +1,2 @@
+rmdir _build /s /q
+exit
@@ -0,0 +1,9 @@
+set script_folder=%~dp0
+
+call %script_folder%build.cmd
+
+java -cp _build;%lib_folder%\*;%artifacts_folder%\* org.junit.runner.JUnitCore ru.ifmo.rain.varfolomeev.hello.tests.HelloUDPServerTests
+
+start %script_folder%delete_build.cmd
+
+exit %errorlevel%